@@ -0,0 +1,49 @@
+package bsptree.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bsptree.BSPTree;
+import bsptree.Line;
+
+/**
+ * Time to build a {@link BSPTree} from scenes of different sizes and layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BuildBenchmark {
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int mCount;
+
+    @Param({ Scenes.RANDOM, Scenes.GRID, Scenes.ADVERSARIAL })
+    public String mLayout;
+
+    private List<Line> mScene;
+
+    @Setup
+    public void setUp() {
+        mScene = Scenes.create(mLayout, mCount);
+    }
+
+    @Benchmark
+    public BSPTree build() {
+        return new BSPTree(mScene);
+    }
+}
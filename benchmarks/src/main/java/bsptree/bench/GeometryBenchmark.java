@@ -0,0 +1,73 @@
+package bsptree.bench;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bsptree.Hyperplane;
+import bsptree.Line;
+
+/**
+ * Cost of the pairwise tests in the build's inner loop, cycling through a fixed set of random segment pairs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeometryBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    private Line[] mLines;
+    private Hyperplane[] mPlanes;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        List<Line> scene = Scenes.random(PAIRS * 2);
+        mLines = new Line[PAIRS];
+        mPlanes = new Hyperplane[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            mPlanes[i] = new Hyperplane(scene.get(2 * i));
+            mLines[i] = scene.get(2 * i + 1);
+        }
+    }
+
+    private int next() {
+        mNext = (mNext + 1) & (PAIRS - 1);
+        return mNext;
+    }
+
+    @Benchmark
+    public Point2D.Double hyperplaneIntersects() {
+        int i = next();
+        return mPlanes[i].intersects(mLines[i]);
+    }
+
+    @Benchmark
+    public int hyperplaneClassify() {
+        int i = next();
+        return mPlanes[i].classify(mLines[i]);
+    }
+
+    @Benchmark
+    public Point2D.Double linesIntersect() {
+        int i = next();
+        Line line = mLines[i];
+        Line other = mLines[(i + 1) & (PAIRS - 1)];
+        return Line.linesIntersect(line.x1, line.y1, line.x2, line.y2, other.x1, other.y1, other.x2, other.y2);
+    }
+}
@@ -0,0 +1,80 @@
+package bsptree.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import bsptree.Line;
+
+/**
+ * Scene generators shared by the benchmarks. Every scene is generated from a fixed seed so runs are comparable.
+ */
+public final class Scenes {
+
+    public static final String RANDOM = "random";
+    public static final String GRID = "grid";
+    public static final String ADVERSARIAL = "adversarial";
+
+    private static final long SEED = 0x5eed;
+
+    private Scenes() {
+    }
+
+    public static List<Line> create(String layout, int count) {
+        switch (layout) {
+            case RANDOM:
+                return random(count);
+            case GRID:
+                return grid(count);
+            case ADVERSARIAL:
+                return adversarial(count);
+            default:
+                throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+    }
+
+    /**
+     * Short segments of random position and direction, in a square that grows with the count so density stays
+     * constant.
+     */
+    public static List<Line> random(int count) {
+        Random rng = new Random(SEED);
+        double size = 100 * Math.sqrt(count);
+        List<Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = rng.nextDouble() * size;
+            double y = rng.nextDouble() * size;
+            lines.add(new Line(x, y, x + rng.nextDouble() * 40 - 20, y + rng.nextDouble() * 40 - 20));
+        }
+        return lines;
+    }
+
+    /**
+     * The walls of a square grid of rooms, where every wall is collinear with the others in its row or column.
+     */
+    public static List<Line> grid(int count) {
+        int rooms = (int) Math.ceil(Math.sqrt(count / 2.0));
+        List<Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < rooms && lines.size() < count; i++) {
+            for (int j = 0; j < rooms && lines.size() < count; j++) {
+                lines.add(new Line(i * 10, j * 10, i * 10 + 10, j * 10));
+                if (lines.size() < count) {
+                    lines.add(new Line(i * 10, j * 10, i * 10, j * 10 + 10));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Parallel segments sorted by position, which turn a tree that takes splitters in input order into a chain as
+     * deep as the scene is large.
+     */
+    public static List<Line> adversarial(int count) {
+        List<Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(new Line(i, 0, i, 10));
+        }
+        return lines;
+    }
+}
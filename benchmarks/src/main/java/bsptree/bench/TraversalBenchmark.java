@@ -0,0 +1,72 @@
+package bsptree.bench;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bsptree.BSPTree;
+import bsptree.CompiledBSPTree;
+import bsptree.DrawOrderVisitor;
+import bsptree.Line;
+
+/**
+ * Time to compute a draw order, by visiting the node graph and by walking the compiled tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int mCount;
+
+    @Param({ Scenes.RANDOM, Scenes.GRID })
+    public String mLayout;
+
+    private BSPTree mTree;
+    private CompiledBSPTree mCompiled;
+    private Point2D.Double mViewPoint;
+    private DrawOrderVisitor mVisitor;
+    private int[] mDrawOrder;
+
+    @Setup
+    public void setUp() {
+        List<Line> scene = Scenes.create(mLayout, mCount);
+        mTree = new BSPTree(scene);
+        mCompiled = mTree.compile();
+
+        // view from the middle of the scene
+        CompiledBSPTree tree = mCompiled;
+        mViewPoint = new Point2D.Double((tree.minX(CompiledBSPTree.ROOT) + tree.maxX(CompiledBSPTree.ROOT)) / 2 + 0.5,
+                (tree.minY(CompiledBSPTree.ROOT) + tree.maxY(CompiledBSPTree.ROOT)) / 2 + 0.5);
+        mVisitor = new DrawOrderVisitor(mViewPoint);
+        mDrawOrder = new int[mCompiled.size()];
+    }
+
+    @Benchmark
+    public List<BSPTree.Node> nodeDrawOrder() {
+        mVisitor.reset();
+        mTree.getRoot().accept(mVisitor);
+        return mVisitor.getDrawOrder();
+    }
+
+    @Benchmark
+    public int compiledDrawOrder() {
+        return mVisitor.drawOrder(mCompiled, mDrawOrder);
+    }
+}
@@ -0,0 +1,95 @@
+package bsptree;
+
+import java.util.Arrays;
+
+
+/**
+ * An immutable snapshot of the shape of a {@link BSPTree} and the cost of building it, see
+ * {@link BSPTree#getStatistics()}.
+ */
+public class BSPStatistics {
+
+    private final int mNodeCount;
+    private final int mLineCount;
+    private final int mMaxDepth;
+    private final double mAverageLeafDepth;
+    private final long[] mLevelNanos;
+
+    BSPStatistics(int nodeCount, int lineCount, int maxDepth, double averageLeafDepth, long[] levelNanos) {
+        mNodeCount = nodeCount;
+        mLineCount = lineCount;
+        mMaxDepth = maxDepth;
+        mAverageLeafDepth = averageLeafDepth;
+        mLevelNanos = levelNanos;
+    }
+
+    /**
+     * @return the number of nodes, one for each line or piece of a line in the tree
+     */
+    public int getNodeCount() {
+        return mNodeCount;
+    }
+
+    /**
+     * @return the number of whole lines in the tree, before any were split
+     */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * @return the number of times a line was split, each of which added one node
+     */
+    public int getSplitCount() {
+        return mNodeCount - mLineCount;
+    }
+
+    /**
+     * @return the number of nodes on the longest path from the root, 0 for an empty tree
+     */
+    public int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @return the mean number of nodes on the paths from the root to each leaf
+     */
+    public double getAverageLeafDepth() {
+        return mAverageLeafDepth;
+    }
+
+    /**
+     * @return nodes per line, 1 when no line was split
+     */
+    public double getFragmentRatio() {
+        return mLineCount == 0 ? 1 : (double) mNodeCount / mLineCount;
+    }
+
+    /**
+     * Times are for the last full build, by a constructor or {@link BSPTree#rebalance()}. Parallel builds add up the
+     * time of every thread, so the total can be more than the time taken.
+     * @return the nanoseconds spent partitioning the nodes at each depth, with the root's level first
+     */
+    public long[] getLevelNanos() {
+        return Arrays.copyOf(mLevelNanos, mLevelNanos.length);
+    }
+
+    /**
+     * @return the nanoseconds spent partitioning nodes at every level of the last full build
+     */
+    public long getBuildNanos() {
+        long total = 0;
+        for (long nanos : mLevelNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "BSPStatistics[nodes=" + mNodeCount + ", lines=" + mLineCount + ", splits=" + getSplitCount()
+                + ", fragmentRatio=" + getFragmentRatio() + ", maxDepth=" + mMaxDepth
+                + ", averageLeafDepth=" + mAverageLeafDepth + ", buildNanos=" + getBuildNanos()
+                + ", levelNanos=" + Arrays.toString(mLevelNanos) + "]";
+    }
+}
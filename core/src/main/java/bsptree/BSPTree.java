@@ -0,0 +1,869 @@
+package bsptree;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A tree held as a series of immutable {@link Snapshot}s. Readers take the current snapshot and may walk it for as
+ * long as they like without locking, while each edit builds a new snapshot, sharing every subtree the edit did not
+ * touch, and publishes it atomically. A reader therefore only ever sees the whole tree from before or after an edit.
+ * Edits from several threads at once are each retried until they apply to the latest snapshot.
+ */
+public class BSPTree {
+
+    // how far a piece of a line may have drifted, through rounding, from where the build saw it
+    private static final double RETRACE_TOLERANCE = 1e-9;
+
+    private final SplitterSelector mSelector;
+    private final double mEpsilon;
+    // the most levels built at a time, 0 if the tree is never left partly built
+    private final int mLevels;
+    private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<>();
+    // rebuilds running, while which edits are linked together for them to replay
+    private final AtomicInteger mRebuilds = new AtomicInteger();
+    private volatile int mRebalanceInterval;
+
+    public BSPTree(List<Line> scene) {
+        this(scene, new SampledCostSelector());
+    }
+
+    public BSPTree(List<Line> scene, SplitterSelector selector) {
+        this(scene, selector, Hyperplane.DEFAULT_EPSILON);
+    }
+
+    /**
+     * @param scene the lines to build the tree from
+     * @param selector chooses the splitters
+     * @param epsilon how far from a plane a point may be and still count as on it, see {@link Hyperplane#classify}
+     */
+    public BSPTree(List<Line> scene, SplitterSelector selector, double epsilon) {
+        this(scene, selector, epsilon, 0);
+    }
+
+    /**
+     * Builds the tree lazily, if given a number of levels. Only the top levels are built now, and each subtree below
+     * them keeps its lines unpartitioned until a traversal first enters it through {@link Node#getFrontNode()} or
+     * {@link Node#getBackNode()}, when its own top levels are built. A tree that is only ever partly explored only
+     * costs the time and memory of the nodes visited, and once fully built is the same as one built all at once.
+     * @param scene the lines to build the tree from
+     * @param selector chooses the splitters, it is called whenever a subtree is built
+     * @param epsilon how far from a plane a point may be and still count as on it, see {@link Hyperplane#classify}
+     * @param levels the most levels of a subtree to build at a time, or 0 to build the whole tree now
+     */
+    public BSPTree(List<Line> scene, SplitterSelector selector, double epsilon, int levels) {
+        this(new FragmentBuffer(scene), selector, epsilon, levels);
+    }
+
+    public BSPTree(SegmentBuffer segments) {
+        this(segments, new SampledCostSelector(), Hyperplane.DEFAULT_EPSILON);
+    }
+
+    /**
+     * Builds the tree from segments held as bare coordinates, such as those streamed from a file by
+     * {@link SegmentBuffer#load}, without a list of lines for the whole scene. The lines of the tree are unlabelled.
+     * @param segments the segments to build the tree from
+     * @param selector chooses the splitters
+     * @param epsilon how far from a plane a point may be and still count as on it, see {@link Hyperplane#classify}
+     */
+    public BSPTree(SegmentBuffer segments, SplitterSelector selector, double epsilon) {
+        this(segments, selector, epsilon, 0);
+    }
+
+    /**
+     * Builds the tree from segments lazily, see {@link #BSPTree(List, SplitterSelector, double, int)}. A line is only
+     * made for a segment when a piece of it becomes a node.
+     * @param segments the segments to build the tree from
+     * @param selector chooses the splitters, it is called whenever a subtree is built
+     * @param epsilon how far from a plane a point may be and still count as on it
+     * @param levels the most levels of a subtree to build at a time, or 0 to build the whole tree now
+     */
+    public BSPTree(SegmentBuffer segments, SplitterSelector selector, double epsilon, int levels) {
+        this(new FragmentBuffer(segments), selector, epsilon, levels);
+    }
+
+    private BSPTree(FragmentBuffer fragments, SplitterSelector selector, double epsilon, int levels) {
+        if (levels < 0) {
+            throw new IllegalArgumentException("levels must be >= 0");
+        }
+        mSelector = selector;
+        mEpsilon = epsilon;
+        mLevels = levels;
+        BSPTreeBuilder builder = new BSPTreeBuilder(selector, epsilon, levels);
+        Node root = builder.build(fragments);
+        mSnapshot.set(new Snapshot(root, fragments.size(), builder.getStats().getLevelNanos(), new Edit()));
+    }
+
+    public BSPTree(List<Line> scene, SplitterSelector selector, ForkJoinPool pool, int sequentialCutoff) {
+        this(scene, selector, Hyperplane.DEFAULT_EPSILON, pool, sequentialCutoff);
+    }
+
+    /**
+     * Builds the tree on a fork/join pool, building the front and back of each node concurrently. The tree is
+     * identical to the one built by {@link #BSPTree(List, SplitterSelector, double)}.
+     * @param scene the lines to build the tree from
+     * @param selector chooses the splitters, it is called from several threads at once
+     * @param epsilon how far from a plane a point may be and still count as on it
+     * @param pool the pool to build on
+     * @param sequentialCutoff subtrees with fewer lines than this are built on a single thread
+     */
+    public BSPTree(List<Line> scene, SplitterSelector selector, double epsilon, ForkJoinPool pool,
+            int sequentialCutoff) {
+        if (sequentialCutoff < 1) {
+            throw new IllegalArgumentException("sequentialCutoff must be >= 1");
+        }
+        mSelector = selector;
+        mEpsilon = epsilon;
+        mLevels = 0;
+        BSPTreeBuilder.Stats stats = new BSPTreeBuilder.Stats();
+        Node root = pool.invoke(new BSPTreeBuilder.ForkJoinBuild(selector, epsilon, scene, sequentialCutoff, stats));
+        mSnapshot.set(new Snapshot(root, scene.size(), stats.getLevelNanos(), new Edit()));
+    }
+
+    /**
+     * @return the tree as it is now, which later edits leave unchanged
+     */
+    public Snapshot snapshot() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * @return the root of the current snapshot
+     */
+    public Node getRoot() {
+        return mSnapshot.get().getRoot();
+    }
+
+    /**
+     * Adds a line to the tree by pushing it down from the root, splitting it only where it crosses a node's line.
+     * Each piece becomes a new leaf where it falls off the tree. The nodes the pieces pass through are copied, and
+     * the new snapshot shares the rest of the tree with the old one.
+     * @param line the line to add
+     */
+    public void insert(Line line) {
+        while (true) {
+            Snapshot current = mSnapshot.get();
+            if (publish(current, insert(current.mRoot, line), current.mLineCount + 1, line, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the root of a copy of the tree with the line added
+     */
+    private Node insert(Node root, Line line) {
+        if (root == null) {
+            return new Node(line);
+        }
+
+        // the nodes made by this insert, which unlike the nodes of the old tree may still be changed
+        Set<Node> made = Collections.newSetFromMap(new IdentityHashMap<>());
+        Node copy = root.copy();
+        made.add(copy);
+
+        List<Node> nodes = new ArrayList<>();
+        List<Line> pieces = new ArrayList<>();
+        List<Line> front = new ArrayList<>();
+        List<Line> back = new ArrayList<>();
+        nodes.add(copy);
+        pieces.add(line);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.remove(nodes.size() - 1);
+            Line piece = pieces.remove(pieces.size() - 1);
+
+            front.clear();
+            back.clear();
+            BSPTreeBuilder.split(new Hyperplane(node.mLine, mEpsilon), piece, front, back);
+            for (Line part : front) {
+                Node child = node.getFrontNode();
+                if (child == null) {
+                    node.mFrontNode = new Node(part);
+                    made.add(node.mFrontNode);
+                } else {
+                    if (!made.contains(child)) {
+                        child = child.copy();
+                        made.add(child);
+                        node.mFrontNode = child;
+                    }
+                    nodes.add(child);
+                    pieces.add(part);
+                }
+            }
+            for (Line part : back) {
+                Node child = node.getBackNode();
+                if (child == null) {
+                    node.mBackNode = new Node(part);
+                    made.add(node.mBackNode);
+                } else {
+                    if (!made.contains(child)) {
+                        child = child.copy();
+                        made.add(child);
+                        node.mBackNode = child;
+                    }
+                    nodes.add(child);
+                    pieces.add(part);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes a line, and every piece it was split into, from the tree. Each node holding a piece of the line is
+     * collapsed by rebuilding its subtree from the remaining lines in that subtree, and the nodes above it are
+     * copied. The pieces are found by pushing the line down from the root again, so only the nodes on their way are
+     * visited.
+     * @param line a line that was in the scene or inserted into the tree
+     * @return true if any part of the line was found and removed
+     */
+    public boolean remove(Line line) {
+        while (true) {
+            Snapshot current = mSnapshot.get();
+            Node root = remove(current.mRoot, line);
+            if (root == current.mRoot) {
+                return false;
+            }
+            if (publish(current, root, current.mLineCount - 1, line, false)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the root of a copy of the tree without the line, or the same root if the line is not in the tree
+     */
+    private Node remove(Node root, Line line) {
+        // the nodes the line's pieces pass through, with the index in this list of each one's parent and which side
+        // of the parent it is on, so a node's parent always comes before it
+        List<Node> visited = new ArrayList<>();
+        int[] parents = new int[16];
+        boolean[] frontSides = new boolean[16];
+        List<Node> replacements = new ArrayList<>();
+        boolean removed = false;
+
+        // the pieces of the line still to push down, with the index of the node they came from
+        List<Node> nodes = new ArrayList<>();
+        List<Line> pieces = new ArrayList<>();
+        int[] from = new int[16];
+        boolean[] fromFront = new boolean[16];
+        if (root != null) {
+            nodes.add(root);
+            pieces.add(line);
+            from[0] = -1;
+        }
+        while (!nodes.isEmpty()) {
+            Node node = nodes.remove(nodes.size() - 1);
+            Line piece = pieces.remove(pieces.size() - 1);
+            int index = visited.size();
+            if (index == parents.length) {
+                parents = Arrays.copyOf(parents, index * 2);
+                frontSides = Arrays.copyOf(frontSides, index * 2);
+            }
+            visited.add(node);
+            parents[index] = from[nodes.size()];
+            frontSides[index] = fromFront[nodes.size()];
+            if (node.mLine.origin == line) {
+                replacements.add(collapse(node, line));
+                removed = true;
+                continue;
+            }
+            replacements.add(node);
+
+            // the same side tests as the build, widened by the rounding a piece may have picked up since, so a side
+            // the build could have sent the piece to is never missed
+            Hyperplane plane = new Hyperplane(node.mLine, mEpsilon);
+            double distance1 = plane.distance(piece.x1, piece.y1);
+            double distance2 = plane.distance(piece.x2, piece.y2);
+            double max = Math.max(distance1, distance2);
+            double min = Math.min(distance1, distance2);
+            boolean front = max > mEpsilon - RETRACE_TOLERANCE;
+            boolean back = max <= mEpsilon + RETRACE_TOLERANCE || min < -mEpsilon + RETRACE_TOLERANCE;
+
+            Line frontPiece = piece;
+            Line backPiece = piece;
+            if (max > mEpsilon + RETRACE_TOLERANCE && min < -mEpsilon - RETRACE_TOLERANCE) {
+                double t = distance1 / (distance1 - distance2);
+                double x = piece.x1 + (piece.x2 - piece.x1) * t;
+                double y = piece.y1 + (piece.y2 - piece.y1) * t;
+                Line first = piece.subLine(piece.label, piece.x1, piece.y1, x, y);
+                Line second = piece.subLine(piece.label, x, y, piece.x2, piece.y2);
+                frontPiece = distance1 > 0 ? first : second;
+                backPiece = distance1 > 0 ? second : first;
+            }
+
+            if (nodes.size() + 2 > from.length) {
+                from = Arrays.copyOf(from, from.length * 2);
+                fromFront = Arrays.copyOf(fromFront, fromFront.length * 2);
+            }
+            Node child = back ? node.getBackNode() : null;
+            if (child != null) {
+                from[nodes.size()] = index;
+                fromFront[nodes.size()] = false;
+                nodes.add(child);
+                pieces.add(backPiece);
+            }
+            child = front ? node.getFrontNode() : null;
+            if (child != null) {
+                from[nodes.size()] = index;
+                fromFront[nodes.size()] = true;
+                nodes.add(child);
+                pieces.add(frontPiece);
+            }
+        }
+        if (!removed) {
+            return root;
+        }
+
+        // copy every node above a collapsed one, walking up from the deepest so each copy takes its children's
+        boolean[] changed = new boolean[visited.size()];
+        for (int i = visited.size() - 1; i >= 0; i--) {
+            changed[i] |= replacements.get(i) != visited.get(i);
+            int parent = parents[i];
+            if (!changed[i] || parent < 0) {
+                continue;
+            }
+            if (!changed[parent]) {
+                replacements.set(parent, visited.get(parent).copy());
+                changed[parent] = true;
+            }
+            if (frontSides[i]) {
+                replacements.get(parent).mFrontNode = replacements.get(i);
+            } else {
+                replacements.get(parent).mBackNode = replacements.get(i);
+            }
+        }
+        return replacements.get(0);
+    }
+
+    /**
+     * @return a subtree rebuilt from the lines of a subtree, leaving out the pieces of the removed line
+     */
+    private Node collapse(Node node, Line removed) {
+        List<Line> lines = new ArrayList<>();
+        for (Line line : collectLines(node)) {
+            if (line.origin != removed) {
+                lines.add(line);
+            }
+        }
+        return new BSPTreeBuilder(mSelector, mEpsilon, mLevels).build(lines);
+    }
+
+    /**
+     * Rebuilds the whole tree from the whole lines its pieces were cut from, undoing the fragmentation and imbalance
+     * left by inserts and removals. The tree is rebuilt outside any retry: edits published meanwhile are replayed
+     * onto the rebuilt tree before it is swapped in.
+     */
+    public void rebalance() {
+        rebalance(0);
+    }
+
+    /**
+     * Rebuilds the latest snapshot and publishes it, unless a rebuild of a later snapshot is published first.
+     * @param edits only rebuild a snapshot with at least this many edits since its last full build
+     */
+    private void rebalance(int edits) {
+        mRebuilds.incrementAndGet();
+        try {
+            Snapshot current = mSnapshot.get();
+            if (current.mEdits.mCount < edits) {
+                return;
+            }
+            Snapshot next = rebalanced(current.mRoot);
+            while (!mSnapshot.compareAndSet(current, next)) {
+                Snapshot latest = mSnapshot.get();
+                List<Edit> missed = new ArrayList<>();
+                Edit edit = latest.mEdits;
+                while (edit != current.mEdits && edit.mPrevious != null) {
+                    missed.add(edit);
+                    edit = edit.mPrevious;
+                }
+                if (edit.mLine == null && edit != current.mEdits) {
+                    // the latest snapshot was rebuilt since the current one, so it is already as balanced as this
+                    return;
+                }
+                if (edit != current.mEdits) {
+                    // an edit published as this rebuild started was not linked to the ones before it, so rebuild again
+                    current = latest;
+                    next = rebalanced(current.mRoot);
+                    continue;
+                }
+                next = replay(next, missed);
+                current = latest;
+            }
+        } finally {
+            mRebuilds.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param edits the edits to make, latest first
+     * @return the snapshot with the edits made to it
+     */
+    private Snapshot replay(Snapshot snapshot, List<Edit> edits) {
+        Node root = snapshot.mRoot;
+        int lineCount = snapshot.mLineCount;
+        Edit made = snapshot.mEdits;
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            Edit edit = edits.get(i);
+            if (edit.mInsert) {
+                root = insert(root, edit.mLine);
+                lineCount++;
+            } else {
+                Node removed = remove(root, edit.mLine);
+                if (removed == root) {
+                    continue;
+                }
+                root = removed;
+                lineCount--;
+            }
+            made = new Edit(edit.mLine, edit.mInsert, made, true);
+        }
+        return new Snapshot(root, lineCount, snapshot.mLevelNanos, made);
+    }
+
+    private Snapshot rebalanced(Node root) {
+        List<Line> lines = new ArrayList<>();
+        Set<Line> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Line line : collectLines(root)) {
+            if (seen.add(line.origin)) {
+                lines.add(line.origin);
+            }
+        }
+        BSPTreeBuilder builder = new BSPTreeBuilder(mSelector, mEpsilon, mLevels);
+        Node rebuilt = builder.build(lines);
+        return new Snapshot(rebuilt, lines.size(), builder.getStats().getLevelNanos(), new Edit());
+    }
+
+    /**
+     * @param edits rebalance the tree after this many inserts and removals, or 0 never to rebalance automatically
+     */
+    public void setRebalanceInterval(int edits) {
+        if (edits < 0) {
+            throw new IllegalArgumentException("edits must be >= 0");
+        }
+        mRebalanceInterval = edits;
+    }
+
+    /**
+     * Publishes an edit of a snapshot unless another edit has been published since, then rebalances the tree if one
+     * is due. Only the edit is retried, never the rebuild.
+     * @param line the line inserted or removed
+     * @param insert true if the line was inserted, false if removed
+     * @return false if the edit must be made again to the latest snapshot
+     */
+    private boolean publish(Snapshot current, Node root, int lineCount, Line line, boolean insert) {
+        Edit edit = new Edit(line, insert, current.mEdits, mRebuilds.get() > 0);
+        if (!mSnapshot.compareAndSet(current, new Snapshot(root, lineCount, current.mLevelNanos, edit))) {
+            return false;
+        }
+        int interval = mRebalanceInterval;
+        if (interval > 0 && edit.mCount >= interval) {
+            rebalance(interval);
+        }
+        return true;
+    }
+
+    /**
+     * @return the lines of a subtree in pre-order
+     */
+    private static List<Line> collectLines(Node root) {
+        List<Line> lines = new ArrayList<>();
+        List<Node> pending = new ArrayList<>();
+        if (root != null) {
+            pending.add(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            lines.add(node.mLine);
+            if (node.getBackNode() != null) {
+                pending.add(node.mBackNode);
+            }
+            if (node.getFrontNode() != null) {
+                pending.add(node.mFrontNode);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the statistics of the current snapshot, see {@link Snapshot#getStatistics()}, which builds the whole of
+     * a lazily built tree
+     */
+    public BSPStatistics getStatistics() {
+        return mSnapshot.get().getStatistics();
+    }
+
+    /**
+     * @return the compiled form of the current snapshot, see {@link Snapshot#compile()}
+     */
+    public CompiledBSPTree compile() {
+        return mSnapshot.get().compile();
+    }
+
+    /**
+     * Finds the first segment along a ray in the current snapshot, see {@link Snapshot#raycast}.
+     * @param origin where the ray starts
+     * @param direction the direction of the ray
+     * @param maxDistance how far along the ray to look
+     * @return the hit, whose line is the piece of a line hit
+     */
+    public RayHit raycast(Point2D.Double origin, Vec direction, double maxDistance) {
+        return mSnapshot.get().raycast(origin, direction, maxDistance);
+    }
+
+    /**
+     * @return the node of the current snapshot bounding the cell containing a point, see {@link Snapshot#locate}
+     */
+    public Node locate(double x, double y) {
+        return mSnapshot.get().locate(x, y);
+    }
+
+    public SplitterSelector getSelector() {
+        return mSelector;
+    }
+
+    /**
+     * @return how far from a plane a point may be and still count as on it
+     */
+    public double getEpsilon() {
+        return mEpsilon;
+    }
+
+    public static interface Visitor {
+        void visit(Node node);
+    }
+
+    /**
+     * Strategy for choosing which line partitions a set of lines at each level of the tree. Parallel builds call the
+     * same selector from several threads, and only produce the same tree as a sequential build if the choice depends
+     * on nothing but the fragments given.
+     */
+    public static interface SplitterSelector {
+        /**
+         * @param fragments the lines, and pieces of lines, being partitioned
+         * @param from index of the first fragment to choose from
+         * @param to index after the last fragment to choose from
+         * @param epsilon the tree's tolerance, which the fragments will be split with
+         * @return the index, between from (inclusive) and to (exclusive), of the fragment to partition with
+         */
+        int select(FragmentBuffer fragments, int from, int to, double epsilon);
+    }
+
+    /**
+     * The whole of a tree at one moment. Nothing reachable from a snapshot is changed by later edits, so any number of
+     * threads can read it at once without locking. The subtrees of a lazily built tree are still built when first
+     * entered, also without locking, and snapshots sharing an unbuilt subtree share the nodes built from it.
+     */
+    public static final class Snapshot {
+        private final Node mRoot;
+        private final int mLineCount;
+        private final long[] mLevelNanos;
+        // inserts and removals since the last full build
+        private final Edit mEdits;
+        // made when first asked for, threads racing to make it make identical copies
+        private volatile CompiledBSPTree mCompiled;
+
+        Snapshot(Node root, int lineCount, long[] levelNanos, Edit edits) {
+            mRoot = root;
+            mLineCount = lineCount;
+            mLevelNanos = levelNanos;
+            mEdits = edits;
+        }
+
+        public Node getRoot() {
+            return mRoot;
+        }
+
+        /**
+         * Measures the tree. The line count and build times are kept by the edits that made the snapshot, so this only
+         * costs a walk over the nodes. The walk visits every node, so it forces a full build of a lazily built tree.
+         * @return the tree's size, shape and build time
+         */
+        public BSPStatistics getStatistics() {
+            int maxDepth = 0;
+            long leafDepths = 0;
+            int leaves = 0;
+            int nodes = 0;
+
+            List<Node> pending = new ArrayList<>();
+            int[] depths = new int[16];
+            if (mRoot != null) {
+                pending.add(mRoot);
+                depths[0] = 1;
+            }
+            while (!pending.isEmpty()) {
+                Node node = pending.remove(pending.size() - 1);
+                int depth = depths[pending.size()];
+                nodes++;
+                maxDepth = Math.max(maxDepth, depth);
+                if (node.isLeaf()) {
+                    leaves++;
+                    leafDepths += depth;
+                    continue;
+                }
+
+                if (pending.size() + 2 > depths.length) {
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                if (node.getBackNode() != null) {
+                    depths[pending.size()] = depth + 1;
+                    pending.add(node.mBackNode);
+                }
+                if (node.getFrontNode() != null) {
+                    depths[pending.size()] = depth + 1;
+                    pending.add(node.mFrontNode);
+                }
+            }
+
+            return new BSPStatistics(nodes, mLineCount, maxDepth, leaves == 0 ? 0 : (double) leafDepths / leaves,
+                    mLevelNanos);
+        }
+
+        /**
+         * @return an immutable flat-array copy of the tree for fast traversal, made once per snapshot, which needs
+         * the whole of a lazily built tree to be built
+         */
+        public CompiledBSPTree compile() {
+            CompiledBSPTree compiled = mCompiled;
+            if (compiled == null) {
+                compiled = new CompiledBSPTree(mRoot);
+                mCompiled = compiled;
+            }
+            return compiled;
+        }
+
+        /**
+         * Finds the first segment along a ray, walking the nodes front to back by the same walk as
+         * {@link CompiledBSPTree#raycast}. Only the children the ray enters before reaching its first hit are asked
+         * for, so in a lazily built tree only those subtrees are built.
+         * @param origin where the ray starts
+         * @param direction the direction of the ray
+         * @param maxDistance how far along the ray to look
+         * @return the hit, whose line is the piece of a line hit and whose node number is always -1
+         */
+        public RayHit raycast(Point2D.Double origin, Vec direction, double maxDistance) {
+            RayHit hit = new RayHit();
+            hit.clear();
+            if (mRoot == null) {
+                return hit;
+            }
+            NumberedNodes nodes = new NumberedNodes(mRoot);
+            if (CompiledBSPTree.raycast(nodes, origin.x, origin.y, direction.x, direction.y, maxDistance, hit)) {
+                hit.line = nodes.mNodes[hit.node].mLine;
+                hit.node = -1;
+            }
+            return hit;
+        }
+
+        /**
+         * Finds the node whose line bounds the cell containing a point, walking down from the root. Only the nodes
+         * on the way are visited, so in a lazily built tree only the subtrees the point falls in are built.
+         * @return the last node on the way to the point's cell, which the cell is an empty child of, or null if the
+         * tree is empty
+         */
+        public Node locate(double x, double y) {
+            Node node = mRoot;
+            while (node != null) {
+                Line line = node.mLine;
+                boolean front = line.face.x * (x - line.centerX) + line.face.y * (y - line.centerY) > 0;
+                Node next = front ? node.getFrontNode() : node.getBackNode();
+                if (next == null) {
+                    return node;
+                }
+                node = next;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The nodes of a tree numbered as a ray reaches them, so a ray can be cast through them as through a compiled
+     * tree. A child is only asked for, and so only built in a lazily built tree, once the ray enters it.
+     */
+    private static final class NumberedNodes implements RayNodes {
+        Node[] mNodes = new Node[64];
+        private int mCount;
+
+        NumberedNodes(Node root) {
+            mNodes[mCount++] = root;
+        }
+
+        private int number(Node node) {
+            if (node == null) {
+                return -1;
+            }
+            if (mCount == mNodes.length) {
+                mNodes = Arrays.copyOf(mNodes, mCount * 2);
+            }
+            mNodes[mCount] = node;
+            return mCount++;
+        }
+
+        @Override
+        public double a(int node) {
+            return mNodes[node].mLine.face.x;
+        }
+
+        @Override
+        public double b(int node) {
+            return mNodes[node].mLine.face.y;
+        }
+
+        @Override
+        public double c(int node) {
+            Line line = mNodes[node].mLine;
+            return -(line.face.x * line.centerX + line.face.y * line.centerY);
+        }
+
+        @Override
+        public double x1(int node) {
+            return mNodes[node].mLine.x1;
+        }
+
+        @Override
+        public double y1(int node) {
+            return mNodes[node].mLine.y1;
+        }
+
+        @Override
+        public double x2(int node) {
+            return mNodes[node].mLine.x2;
+        }
+
+        @Override
+        public double y2(int node) {
+            return mNodes[node].mLine.y2;
+        }
+
+        @Override
+        public int front(int node) {
+            return number(mNodes[node].getFrontNode());
+        }
+
+        @Override
+        public int back(int node) {
+            return number(mNodes[node].getBackNode());
+        }
+    }
+
+    /**
+     * An insert or removal made since a snapshot's last full build. While a rebuild is running each edit is linked to
+     * the one before it, so the rebuild can replay the edits published meanwhile, and otherwise it is not, so the
+     * lines of old edits are not kept. Each full build starts afresh with an edit of no line.
+     */
+    private static final class Edit {
+        final Line mLine;
+        final boolean mInsert;
+        final Edit mPrevious;
+        // edits since the full build, this one included
+        final int mCount;
+
+        Edit() {
+            mLine = null;
+            mInsert = false;
+            mPrevious = null;
+            mCount = 0;
+        }
+
+        Edit(Line line, boolean insert, Edit previous, boolean linked) {
+            mLine = line;
+            mInsert = insert;
+            mPrevious = linked ? previous : null;
+            mCount = previous.mCount + 1;
+        }
+    }
+
+    /**
+     * A node of a tree. A node is only changed while the tree it belongs to is being built, and once published only
+     * when a child of a lazily built tree is first asked for, which never blocks: threads asking at once may each
+     * build the child, but all of them are given the same one.
+     */
+    public static class Node {
+        final Line mLine;
+        // null until built in a lazily built tree, see getFrontNode() and getBackNode()
+        Node mFrontNode;
+        Node mBackNode;
+
+        // the children of a lazily built tree that have not been built yet
+        private volatile BSPTreeBuilder.Subtree mUnbuiltFront;
+        private volatile BSPTreeBuilder.Subtree mUnbuiltBack;
+
+        Node(Line line) {
+            mLine = line;
+            mFrontNode = null;
+            mBackNode = null;
+        }
+
+        void setUnbuilt(BSPTreeBuilder.Subtree front, BSPTreeBuilder.Subtree back) {
+            mUnbuiltFront = front;
+            mUnbuiltBack = back;
+        }
+
+        /**
+         * @return a new node with the same line, sharing this node's children, built or not, an unbuilt child being
+         * built once for both
+         */
+        private Node copy() {
+            Node copy = new Node(mLine);
+            // the unbuilt children are read first, as building one is only seen through them
+            copy.mUnbuiltFront = mUnbuiltFront;
+            copy.mUnbuiltBack = mUnbuiltBack;
+            copy.mFrontNode = mFrontNode;
+            copy.mBackNode = mBackNode;
+            return copy;
+        }
+
+        public Line getLine() {
+            return mLine;
+        }
+
+        /**
+         * @return the subtree in front of the line, building it first if it has not been built yet
+         */
+        public Node getFrontNode() {
+            BSPTreeBuilder.Subtree unbuilt = mUnbuiltFront;
+            if (unbuilt == null) {
+                return mFrontNode;
+            }
+            // every thread gets the same node from the subtree, which is seen by readers of the child once the
+            // unbuilt subtree is cleared
+            Node built = unbuilt.build();
+            mFrontNode = built;
+            mUnbuiltFront = null;
+            return built;
+        }
+
+        /**
+         * @return the subtree behind the line, building it first if it has not been built yet
+         */
+        public Node getBackNode() {
+            BSPTreeBuilder.Subtree unbuilt = mUnbuiltBack;
+            if (unbuilt == null) {
+                return mBackNode;
+            }
+            Node built = unbuilt.build();
+            mBackNode = built;
+            mUnbuiltBack = null;
+            return built;
+        }
+
+        public void accept(Visitor visitor) {
+            visitor.visit(this);
+        }
+
+        public boolean isLeaf() {
+            // the unbuilt children are read first, as building one is only seen through them
+            return mUnbuiltFront == null && mUnbuiltBack == null && mFrontNode == null && mBackNode == null;
+        }
+
+    }
+}
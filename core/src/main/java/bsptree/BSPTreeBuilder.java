@@ -0,0 +1,397 @@
+package bsptree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Builds the nodes of a {@link BSPTree} from an explicit stack of pending subtrees rather than by recursion, so the
+ * depth of the tree is limited by the heap instead of the thread's stack.
+ *
+ * All pending lines live in one {@link FragmentBuffer}. Each pending subtree owns a contiguous range of the buffer and
+ * the most recently pushed subtree always owns the range at the end, so partitioning it only ever truncates and
+ * appends to the end of the buffer. The buffer and the front/back scratch buffers are reused for every level of a
+ * build, and splitting a line only adds a fragment to them rather than creating lines.
+ *
+ * A builder may be limited to a number of levels, for trees built lazily. The subtrees below the last level are left
+ * unbuilt, each holding a copy of its fragments, and are built the same way when first entered.
+ */
+class BSPTreeBuilder {
+
+    // past this depth a forked build is degenerating into a chain, so stop forking rather than use up the stack
+    private static final int MAX_FORK_DEPTH = 64;
+
+    private final BSPTree.SplitterSelector mSelector;
+    private final double mEpsilon;
+    private final int mLevels;
+
+    private FragmentBuffer mFragments;
+    private FragmentBuffer mFront;
+    private FragmentBuffer mBack;
+
+    // the pending subtrees: the node they will be attached to, which side of it, and where their lines start
+    private BSPTree.Node[] mParents = new BSPTree.Node[16];
+    private boolean[] mFrontSides = new boolean[16];
+    private int[] mStarts = new int[16];
+    private int[] mDepths = new int[16];
+    private int mPending;
+
+    private final Stats mStats = new Stats();
+
+    BSPTreeBuilder(BSPTree.SplitterSelector selector, double epsilon) {
+        this(selector, epsilon, 0);
+    }
+
+    /**
+     * @param selector chooses the splitters
+     * @param epsilon how far from a plane a point may be and still count as on it
+     * @param levels the most levels of a subtree to build, 0 to build it all
+     */
+    BSPTreeBuilder(BSPTree.SplitterSelector selector, double epsilon, int levels) {
+        mSelector = selector;
+        mEpsilon = epsilon;
+        mLevels = levels;
+    }
+
+    /**
+     * @param lines the lines to build a tree from, this list is not modified
+     * @return the root of the tree, or null if there are no lines
+     */
+    BSPTree.Node build(List<Line> lines) {
+        return build(new FragmentBuffer(lines));
+    }
+
+    /**
+     * Builds straight from a buffer of segments, making a line for a segment only when a piece of it becomes a node.
+     * @param segments the segments to build a tree from
+     * @return the root of the tree, or null if there are no segments
+     */
+    BSPTree.Node build(SegmentBuffer segments) {
+        return build(new FragmentBuffer(segments));
+    }
+
+    /**
+     * @param fragments the fragments to build a tree from, this buffer is not modified
+     * @return the root of the tree, or null if there are no fragments
+     */
+    BSPTree.Node build(FragmentBuffer fragments) {
+        if (fragments.size() == 0) {
+            return null;
+        }
+
+        mFragments = new FragmentBuffer(fragments);
+        mFragments.addAll(fragments, 0, fragments.size());
+        mFront = new FragmentBuffer(fragments);
+        mBack = new FragmentBuffer(fragments);
+
+        BSPTree.Node root = null;
+        push(null, false, 0, 0);
+        while (mPending > 0) {
+            mPending--;
+            BSPTree.Node parent = mParents[mPending];
+            boolean frontSide = mFrontSides[mPending];
+            int depth = mDepths[mPending];
+            mParents[mPending] = null;
+
+            long startTime = System.nanoTime();
+            BSPTree.Node node = partition(mStarts[mPending], depth);
+            mStats.recordLevel(depth, System.nanoTime() - startTime);
+            if (parent == null) {
+                root = node;
+            } else if (frontSide) {
+                parent.mFrontNode = node;
+            } else {
+                parent.mBackNode = node;
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * @return the statistics of every build made by this builder
+     */
+    Stats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Creates the node for the pending lines from start to the end of the buffer and replaces those lines with the
+     * ranges of its front and back subtrees.
+     */
+    private BSPTree.Node partition(int start, int depth) {
+        int end = mFragments.size();
+        int splitterIndex = mSelector.select(mFragments, start, end, mEpsilon);
+        BSPTree.Node node = new BSPTree.Node(mFragments.line(splitterIndex));
+
+        mFront.clear();
+        mBack.clear();
+        split(new Hyperplane(node.mLine, mEpsilon), mFragments, start, end, splitterIndex, mFront, mBack);
+        mFragments.truncate(start);
+
+        if (mLevels > 0 && depth + 1 >= mLevels) {
+            node.setUnbuilt(unbuilt(mFront), unbuilt(mBack));
+            return node;
+        }
+
+        // the front is pushed last so it is built first, the same order the recursive build used
+        if (mBack.size() > 0) {
+            push(node, false, mFragments.size(), depth + 1);
+            mFragments.addAll(mBack, 0, mBack.size());
+        }
+        if (mFront.size() > 0) {
+            push(node, true, mFragments.size(), depth + 1);
+            mFragments.addAll(mFront, 0, mFront.size());
+        }
+
+        return node;
+    }
+
+    private Subtree unbuilt(FragmentBuffer fragments) {
+        if (fragments.size() == 0) {
+            return null;
+        }
+        FragmentBuffer copy = new FragmentBuffer(fragments);
+        copy.addAll(fragments, 0, fragments.size());
+        return new Subtree(mSelector, mEpsilon, mLevels, copy);
+    }
+
+    private void push(BSPTree.Node parent, boolean frontSide, int start, int depth) {
+        if (mPending == mStarts.length) {
+            int capacity = mPending * 2;
+            mParents = Arrays.copyOf(mParents, capacity);
+            mFrontSides = Arrays.copyOf(mFrontSides, capacity);
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mDepths = Arrays.copyOf(mDepths, capacity);
+        }
+        mParents[mPending] = parent;
+        mFrontSides[mPending] = frontSide;
+        mStarts[mPending] = start;
+        mDepths[mPending] = depth;
+        mPending++;
+    }
+
+    /**
+     * Sorts fragments from..to, other than the splitter itself, into the fragments in front of and behind the
+     * splitter's plane. Fragments crossing the plane are subdivided with one part going each way, and fragments along
+     * the plane go behind it.
+     * @param plane the plane of the partitioning line
+     * @param fragments the fragments to partition
+     * @param from index of the first fragment to partition
+     * @param to index after the last fragment to partition
+     * @param skip index of the splitter within fragments, this fragment is not partitioned
+     * @param front receives the fragments in front of the plane
+     * @param back receives the fragments behind the plane
+     */
+    static void split(Hyperplane plane, FragmentBuffer fragments, int from, int to, int skip, FragmentBuffer front,
+            FragmentBuffer back) {
+        double[] parameter = new double[1];
+        for (int i = from; i < to; i++) {
+            if (i == skip) {
+                continue;
+            }
+
+            int source = fragments.source(i);
+            double t0 = fragments.t0(i);
+            double t1 = fragments.t1(i);
+            double x1 = fragments.x1(i);
+            double y1 = fragments.y1(i);
+            double x2 = fragments.x2(i);
+            double y2 = fragments.y2(i);
+            switch (plane.classify(x1, y1, x2, y2, parameter)) {
+                case Hyperplane.FRONT:
+                    front.add(source, t0, t1);
+                    break;
+                case Hyperplane.SPANNING:
+                    // subdivide the fragment where the plane crosses it, in terms of its source segment
+                    double t = t0 + (t1 - t0) * parameter[0];
+                    if (plane.distance(x1, y1) > 0) {
+                        front.add(source, t0, t);
+                        back.add(source, t, t1);
+                    } else {
+                        back.add(source, t0, t);
+                        front.add(source, t, t1);
+                    }
+                    break;
+                default:
+                    back.add(source, t0, t1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Sorts a single line into front or back of the plane, subdividing it if it crosses the plane. Lines along the
+     * plane go behind it.
+     * @param plane the plane of the partitioning line
+     * @param line the line to partition
+     * @param front receives the line, or its part, in front of the plane
+     * @param back receives the line, or its part, behind the plane
+     */
+    static void split(Hyperplane plane, Line line, List<Line> front, List<Line> back) {
+        double[] parameter = new double[1];
+        switch (plane.classify(line, parameter)) {
+            case Hyperplane.FRONT:
+                front.add(line);
+                break;
+            case Hyperplane.SPANNING:
+                // subdivide the segment where the plane crosses it
+                double t = parameter[0];
+                double x = line.x1 + (line.x2 - line.x1) * t;
+                double y = line.y1 + (line.y2 - line.y1) * t;
+                Line subLine1 = line.subLine(line.label, line.x1, line.y1, x, y);
+                Line subLine2 = line.subLine(line.label, x, y, line.x2, line.y2);
+                if (plane.distance(line.x1, line.y1) > 0) {
+                    front.add(subLine1);
+                    back.add(subLine2);
+                } else {
+                    back.add(subLine1);
+                    front.add(subLine2);
+                }
+                break;
+            default:
+                back.add(line);
+                break;
+        }
+    }
+
+    /**
+     * Builds a subtree on a fork/join pool. The front and back subtrees of each node are built concurrently until a
+     * subtree has fewer lines than the sequential cutoff, after which it is finished by a {@link BSPTreeBuilder}.
+     * The same lines are partitioned in the same order as the sequential build, so the trees are identical.
+     */
+    static class ForkJoinBuild extends RecursiveTask<BSPTree.Node> {
+        private static final long serialVersionUID = 6620484327183557146L;
+
+        private final BSPTree.SplitterSelector mSelector;
+        private final double mEpsilon;
+        private final FragmentBuffer mFragments;
+        private final int mSequentialCutoff;
+        private final int mDepth;
+        private final Stats mStats;
+
+        ForkJoinBuild(BSPTree.SplitterSelector selector, double epsilon, List<Line> lines, int sequentialCutoff,
+                Stats stats) {
+            this(selector, epsilon, new FragmentBuffer(lines), sequentialCutoff, 0, stats);
+        }
+
+        private ForkJoinBuild(BSPTree.SplitterSelector selector, double epsilon, FragmentBuffer fragments,
+                int sequentialCutoff, int depth, Stats stats) {
+            mSelector = selector;
+            mEpsilon = epsilon;
+            mFragments = fragments;
+            mSequentialCutoff = sequentialCutoff;
+            mDepth = depth;
+            mStats = stats;
+        }
+
+        @Override
+        protected BSPTree.Node compute() {
+            int size = mFragments.size();
+            if (size < mSequentialCutoff || mDepth >= MAX_FORK_DEPTH) {
+                BSPTreeBuilder builder = new BSPTreeBuilder(mSelector, mEpsilon);
+                BSPTree.Node root = builder.build(mFragments);
+                mStats.merge(builder.getStats(), mDepth);
+                return root;
+            }
+
+            long startTime = System.nanoTime();
+            int splitterIndex = mSelector.select(mFragments, 0, size, mEpsilon);
+            BSPTree.Node node = new BSPTree.Node(mFragments.line(splitterIndex));
+            FragmentBuffer front = new FragmentBuffer(mFragments);
+            FragmentBuffer back = new FragmentBuffer(mFragments);
+            split(new Hyperplane(node.mLine, mEpsilon), mFragments, 0, size, splitterIndex, front, back);
+            mStats.add(mDepth, System.nanoTime() - startTime);
+
+            ForkJoinBuild frontBuild = null;
+            if (front.size() > 0) {
+                frontBuild = new ForkJoinBuild(mSelector, mEpsilon, front, mSequentialCutoff, mDepth + 1, mStats);
+                frontBuild.fork();
+            }
+            if (back.size() > 0) {
+                node.mBackNode = new ForkJoinBuild(mSelector, mEpsilon, back, mSequentialCutoff, mDepth + 1, mStats)
+                        .compute();
+            }
+            if (frontBuild != null) {
+                node.mFrontNode = frontBuild.join();
+            }
+
+            return node;
+        }
+    }
+
+    /**
+     * A subtree of a lazily built tree that has not been built yet. It is built at most once however many nodes share
+     * it, such as the copies of its parent made by edits, so every snapshot sees the same nodes. Threads entering it
+     * at once each build it without locking and the first to finish is kept.
+     */
+    static class Subtree {
+        private final BSPTree.SplitterSelector mSelector;
+        private final double mEpsilon;
+        private final int mLevels;
+        private final FragmentBuffer mFragments;
+        private final AtomicReference<BSPTree.Node> mBuilt = new AtomicReference<>();
+
+        Subtree(BSPTree.SplitterSelector selector, double epsilon, int levels, FragmentBuffer fragments) {
+            mSelector = selector;
+            mEpsilon = epsilon;
+            mLevels = levels;
+            mFragments = fragments;
+        }
+
+        /**
+         * @return the top levels of the subtree, with the subtrees below them left unbuilt in turn
+         */
+        BSPTree.Node build() {
+            BSPTree.Node built = mBuilt.get();
+            if (built == null) {
+                // the fragments are only read, so racing builds can share them
+                built = new BSPTreeBuilder(mSelector, mEpsilon, mLevels).build(mFragments);
+                if (!mBuilt.compareAndSet(null, built)) {
+                    built = mBuilt.get();
+                }
+            }
+            return built;
+        }
+    }
+
+    /**
+     * The time spent partitioning each level of the trees built, which is all a build can measure that the finished
+     * tree cannot. Recording is unsynchronized for the sequential builder, forked builds share one Stats through the
+     * synchronized methods.
+     */
+    static class Stats {
+        private long[] mLevelNanos = new long[16];
+        private int mLevels;
+
+        void recordLevel(int depth, long nanos) {
+            if (depth >= mLevelNanos.length) {
+                mLevelNanos = Arrays.copyOf(mLevelNanos, Math.max(depth + 1, mLevelNanos.length * 2));
+            }
+            mLevelNanos[depth] += nanos;
+            mLevels = Math.max(mLevels, depth + 1);
+        }
+
+        /**
+         * Adds the totals of a build of a subtree rooted at the given depth.
+         */
+        synchronized void merge(Stats stats, int depth) {
+            for (int level = 0; level < stats.mLevels; level++) {
+                recordLevel(depth + level, stats.mLevelNanos[level]);
+            }
+        }
+
+        synchronized void add(int depth, long nanos) {
+            recordLevel(depth, nanos);
+        }
+
+        /**
+         * @return the time spent partitioning each level, indexed by depth with the root at 0
+         */
+        synchronized long[] getLevelNanos() {
+            return Arrays.copyOf(mLevelNanos, mLevels);
+        }
+    }
+}
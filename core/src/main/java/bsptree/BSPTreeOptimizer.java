@@ -0,0 +1,152 @@
+package bsptree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+
+/**
+ * Searches for a better tree for a static scene than a single build gives, by building many candidate trees and
+ * keeping the one that is cheapest to traverse.
+ *
+ * Candidate 0 is the tree built from the scene as given with the default selector, so the result is never worse than
+ * that. Every other candidate shuffles the scene and varies the {@link SampledCostSelector}'s sampling and weights
+ * from a random number generator seeded by the optimizer's seed and the candidate's number, so a candidate is always
+ * the same tree for the same seed, whichever thread builds it. With only an iteration budget the result is the same
+ * on every run; a time budget can stop the search at a different candidate.
+ *
+ * Trees are scored from their {@link BSPStatistics}: nodes per line, which is the cost of visiting every node to
+ * draw, and the average and maximum leaf depth relative to a perfectly balanced tree of the scene's lines, which are
+ * the cost of locating a point or casting a ray. Lower is better.
+ *
+ * An optimizer holds no state between searches, so it may run any number of them at once.
+ */
+public class BSPTreeOptimizer {
+
+    public static final double DEFAULT_FRAGMENT_WEIGHT = 1;
+    public static final double DEFAULT_DEPTH_WEIGHT = 1;
+    public static final double DEFAULT_MAX_DEPTH_WEIGHT = 0.25;
+
+    private final long mSeed;
+    private final double mFragmentWeight;
+    private final double mDepthWeight;
+    private final double mMaxDepthWeight;
+
+    public BSPTreeOptimizer(long seed) {
+        this(seed, DEFAULT_FRAGMENT_WEIGHT, DEFAULT_DEPTH_WEIGHT, DEFAULT_MAX_DEPTH_WEIGHT);
+    }
+
+    /**
+     * @param seed seeds the shuffles and selectors of the candidates
+     * @param fragmentWeight cost of each node per line of the scene
+     * @param depthWeight cost of the average leaf depth, as a multiple of the depth of a balanced tree
+     * @param maxDepthWeight cost of the maximum depth, as a multiple of the depth of a balanced tree
+     */
+    public BSPTreeOptimizer(long seed, double fragmentWeight, double depthWeight, double maxDepthWeight) {
+        mSeed = seed;
+        mFragmentWeight = fragmentWeight;
+        mDepthWeight = depthWeight;
+        mMaxDepthWeight = maxDepthWeight;
+    }
+
+    /**
+     * Builds candidate trees until either budget runs out and returns the best. At least one candidate is always
+     * built. Each thread takes the next candidate number in turn, and none takes another once the time budget is
+     * spent, so a search stops within one build of its deadline.
+     * @param scene the lines to build the trees from, this list is not modified
+     * @param iterations the most candidates to build, 0 or less for no limit
+     * @param timeBudgetMillis no more candidates are started after this many milliseconds, 0 for no limit
+     * @param parallel true to build candidates on several threads at once
+     * @return the tree with the lowest score, the lowest numbered of any with the same score
+     */
+    public OptimizerResult optimize(final List<Line> scene, int iterations, long timeBudgetMillis, boolean parallel) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("timeBudgetMillis must be >= 0");
+        }
+        if (iterations <= 0 && timeBudgetMillis == 0) {
+            throw new IllegalArgumentException("iterations or timeBudgetMillis must be limited");
+        }
+
+        final int limit = iterations > 0 ? iterations : Integer.MAX_VALUE;
+        final long deadline = System.nanoTime() + timeBudgetMillis * 1000000;
+        final boolean timed = timeBudgetMillis > 0;
+        final AtomicInteger next = new AtomicInteger();
+        final Search search = new Search();
+
+        int threads = parallel ? Math.min(limit, ForkJoinPool.getCommonPoolParallelism() + 1) : 1;
+        IntStream workers = IntStream.range(0, threads);
+        if (parallel) {
+            workers = workers.parallel();
+        }
+        workers.forEach(worker -> {
+            while (true) {
+                int candidate = next.getAndIncrement();
+                // the count wraps round to negative once every number has been taken
+                if (candidate >= limit || candidate < 0) {
+                    break;
+                }
+                // candidate 0 is built whatever the time, so there is always a result
+                if (candidate > 0 && timed && System.nanoTime() - deadline > 0) {
+                    break;
+                }
+                BSPTree tree = build(scene, candidate);
+                search.offer(tree, score(tree.getStatistics()), candidate);
+            }
+        });
+        return search.result();
+    }
+
+    private BSPTree build(List<Line> scene, int candidate) {
+        if (candidate == 0) {
+            return new BSPTree(scene);
+        }
+        Random random = new Random(mSeed + candidate * 0x9E3779B97F4A7C15L);
+        List<Line> lines = new ArrayList<>(scene);
+        Collections.shuffle(lines, random);
+        SampledCostSelector selector = new SampledCostSelector(8 + random.nextInt(57), 32 + random.nextInt(225),
+                1 + random.nextDouble() * 7, 0.25 + random.nextDouble() * 0.75);
+        return new BSPTree(lines, selector);
+    }
+
+    /**
+     * Depths are measured against a balanced tree of the scene's lines rather than of the tree's own nodes, so a tree
+     * is not excused its depth for having split more lines.
+     * @return the cost of traversing a tree with the given statistics, lower is better
+     */
+    public double score(BSPStatistics stats) {
+        if (stats.getNodeCount() == 0) {
+            return 0;
+        }
+        double balancedDepth = Math.log(stats.getLineCount() + 1) / Math.log(2);
+        return mFragmentWeight * stats.getFragmentRatio()
+                + mDepthWeight * stats.getAverageLeafDepth() / balancedDepth
+                + mMaxDepthWeight * stats.getMaxDepth() / balancedDepth;
+    }
+
+    /**
+     * The best candidate of one search, offered candidates from every thread building them.
+     */
+    private static class Search {
+        private BSPTree mBestTree;
+        private double mBestScore = Double.MAX_VALUE;
+        private int mBestCandidate = -1;
+        private int mCandidatesBuilt;
+
+        synchronized void offer(BSPTree tree, double score, int candidate) {
+            mCandidatesBuilt++;
+            if (score < mBestScore || (score == mBestScore && candidate < mBestCandidate)) {
+                mBestTree = tree;
+                mBestScore = score;
+                mBestCandidate = candidate;
+            }
+        }
+
+        synchronized OptimizerResult result() {
+            return new OptimizerResult(mBestTree, mBestScore, mBestCandidate, mCandidatesBuilt);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package bsptree;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+
+
+public class BSPTreeViewer extends JFrame {
+    private static final long serialVersionUID = -2414813615705018370L;
+    private Listener mListener;
+
+    public BSPTreeViewer(BSPTree tree, Point2D.Double viewPoint) {
+        Container content = getContentPane();
+        content.add(new BSPTreeViewPanel(tree, viewPoint));
+        setTitle("BSP Tree Viewer");
+        setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        pack();
+    }
+
+    public void addListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    public static interface Listener {
+        void viewpointChanged(Point2D.Double position, Vec lookVector);
+
+        /**
+         * Called on a background thread, so the window stays responsive while large trees are built.
+         */
+        BSPTree generateNewTree(int numLines);
+    }
+
+    private class BSPTreeViewPanel extends JPanel {
+        private static final long serialVersionUID = 2898398150709435188L;
+
+        // colors looked up from the gradient by position along the draw order
+        private static final int GRADIENT_STEPS = 256;
+        // the angle from the look direction to either edge of the view cone, and how far its edges are drawn
+        private static final double VIEW_HALF_ANGLE = Math.PI / 4;
+        private static final int VIEW_EDGE_LENGTH = 40;
+        // how far the mouse must move while pressed to look towards where it is released
+        private static final int DRAG_DISTANCE = 4;
+
+        private final BasicStroke mSegmentStroke = new BasicStroke(2);
+        private final BasicStroke mMarkerStroke = new BasicStroke(1);
+        private final Color[] mGradientColors = new Color[GRADIENT_STEPS];
+
+        // read and written on the event thread only
+        private BSPTree mBSPTree;
+        private Point2D.Double mViewPoint;
+        private Vec mLookVector = new Vec(1, 0);
+        private boolean mConeEnabled;
+        private Point2D.Double mPressPoint;
+        private BufferedImage mImage;
+        private int mSegmentCount;
+        private Future<?> mPendingUpdate;
+        // new trees asked for, and which of those is shown
+        private long mTreeRequests;
+        private long mTreeShown;
+        private int mRequestedWidth;
+        private int mRequestedHeight;
+
+        private int mLineCountSeed = 3;
+        private int mLineCount = 8;
+
+        // trees are generated and drawn on the worker, each request replaces any earlier one still waiting, and
+        // results for requests that have since been replaced are thrown away
+        private final ExecutorService mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BSPTreeViewer worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        private final AtomicLong mGeneration = new AtomicLong();
+
+        // read and written on the worker only, the cache for the whole scene and the visitor for the view cone
+        private final DrawOrderCache mDrawOrderCache = new DrawOrderCache();
+        private final Point2D.Double mConeViewPoint = new Point2D.Double();
+        private final DrawOrderVisitor mConeVisitor = new DrawOrderVisitor(mConeViewPoint);
+        private BSPTree mGeneratedTree;
+        private long mGeneratedRequest;
+        private int[] mDrawOrder = new int[0];
+        private CompiledBSPTree mDrawnTree;
+        private int[] mDrawnOrder = new int[0];
+        private int mDrawnCount;
+        private BufferedImage mDrawnImage;
+
+        public BSPTreeViewPanel(BSPTree bspTree, Point2D.Double viewPoint) {
+            // Rainbows :3
+            Gradient gradient = new Gradient(new Color(255, 0, 0), new Color(255, 0, 128));
+            gradient.addStop(1/11d, new Color(255, 128, 0));
+            gradient.addStop(2/11d, new Color(255, 255, 0));
+            gradient.addStop(3/11d, new Color(128, 255, 0));
+            gradient.addStop(4/11d, new Color(0, 255, 0));
+            gradient.addStop(5/11d, new Color(0, 255, 128));
+            gradient.addStop(6/11d, new Color(0, 255, 255));
+            gradient.addStop(7/11d, new Color(0, 128, 255));
+            gradient.addStop(8/11d, new Color(0, 0, 255));
+            gradient.addStop(9/11d, new Color(128, 0, 255));
+            gradient.addStop(10/11d, new Color(255, 0, 255));
+            for (int i = 0; i < GRADIENT_STEPS; i++) {
+                mGradientColors[i] = gradient.getColor(i / (GRADIENT_STEPS - 1d));
+            }
+
+            setPreferredSize(new Dimension(500, 520));
+
+            addMouseWheelListener(new MouseAdapter() {
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    int rot = e.getWheelRotation();
+                    if (rot != 0) {
+                        mLineCountSeed = Math.min(11, Math.max(1, mLineCountSeed - rot));
+                        mLineCount = getLineCount(mLineCountSeed);
+                        update(true);
+                    }
+                }
+            });
+
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    mPressPoint = new Point2D.Double(e.getX(), e.getY());
+                }
+
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    switch (e.getButton()) {
+                        case MouseEvent.BUTTON3:
+                            update(true);
+                            break;
+                        case MouseEvent.BUTTON2:
+                            // back to seeing the whole scene
+                            mConeEnabled = false;
+                            update(false);
+                            break;
+                        default:
+                            // a drag looks from where it started towards where it ended, a click moves the viewpoint
+                            Point2D.Double release = new Point2D.Double(e.getX(), e.getY());
+                            if (mPressPoint != null && mPressPoint.distance(release) >= DRAG_DISTANCE) {
+                                mViewPoint = mPressPoint;
+                                mLookVector = new Vec(release.x - mPressPoint.x, release.y - mPressPoint.y).normalise();
+                                mConeEnabled = true;
+                            } else {
+                                mViewPoint = release;
+                            }
+                            mListener.viewpointChanged(mViewPoint, mLookVector);
+                            update(false);
+                            break;
+                    }
+                }
+            });
+
+            setBSPTree(bspTree, viewPoint);
+        }
+
+        public void setBSPTree(BSPTree tree, Point2D.Double viewPoint) {
+            mBSPTree = tree;
+            mViewPoint = viewPoint;
+            update(false);
+        }
+
+        private int getLineCount(int seed) {
+            return (int) (Math.pow(2, seed));
+        }
+
+        /**
+         * Asks the worker for a new picture of the tree from the current viewpoint, after generating a new tree if
+         * one is wanted or an earlier request for one has not been shown yet.
+         */
+        private void update(boolean newTree) {
+            if (newTree) {
+                mTreeRequests++;
+            }
+            final long treeRequest = mTreeRequests;
+            final boolean generate = treeRequest != mTreeShown;
+            final long generation = mGeneration.incrementAndGet();
+            final BSPTree tree = mBSPTree;
+            final Point2D.Double viewPoint = new Point2D.Double(mViewPoint.x, mViewPoint.y);
+            final Vec lookVector = mConeEnabled ? mLookVector : null;
+            final int lineCount = mLineCount;
+            final int width = getWidth() > 0 ? getWidth() : getPreferredSize().width;
+            final int height = getHeight() > 0 ? getHeight() : getPreferredSize().height;
+            mRequestedWidth = width;
+            mRequestedHeight = height;
+
+            if (mPendingUpdate != null) {
+                mPendingUpdate.cancel(false);
+            }
+            mPendingUpdate = mWorker.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // a tree generated for a request that was then replaced by a new viewpoint is kept for the next
+                    if (generate && treeRequest != mGeneratedRequest) {
+                        mGeneratedTree = mListener.generateNewTree(lineCount);
+                        mGeneratedRequest = treeRequest;
+                    }
+                    final BSPTree drawnTree = generate ? mGeneratedTree : tree;
+                    if (generation != mGeneration.get()) {
+                        return;
+                    }
+                    final int count = draw(drawnTree.compile(), viewPoint, lookVector, width, height);
+                    final BufferedImage image = mDrawnImage;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation != mGeneration.get()) {
+                                return;
+                            }
+                            mBSPTree = drawnTree;
+                            mTreeShown = treeRequest;
+                            mImage = image;
+                            mSegmentCount = count;
+                            repaint();
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Redraws the segments into the back buffer on the worker, unless they would be drawn in the same order as
+         * they already are.
+         * @param lookVector the direction of the view cone, or null to draw the whole scene
+         * @return the number of segments drawn
+         */
+        private int draw(CompiledBSPTree tree, Point2D.Double viewPoint, Vec lookVector, int width, int height) {
+            if (mDrawOrder.length < tree.size()) {
+                mDrawOrder = new int[tree.size()];
+            }
+            int count;
+            if (lookVector == null) {
+                count = mDrawOrderCache.drawOrder(tree, viewPoint, mDrawOrder);
+            } else {
+                // the cache only holds orders of the whole scene
+                mConeViewPoint.setLocation(viewPoint);
+                mConeVisitor.setViewCone(lookVector, VIEW_HALF_ANGLE);
+                count = mConeVisitor.drawOrder(tree, mDrawOrder);
+            }
+            if (tree == mDrawnTree && mDrawnImage.getWidth() == width && mDrawnImage.getHeight() == height
+                    && Arrays.equals(mDrawOrder, 0, count, mDrawnOrder, 0, mDrawnCount)) {
+                return count;
+            }
+
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = image.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(Color.black);
+            g2.fillRect(0, 0, width, height);
+            g2.setStroke(mSegmentStroke);
+            for (int i = 0; i < count; i++) {
+                int node = mDrawOrder[i];
+                int step = count > 1 ? (int) ((long) i * (GRADIENT_STEPS - 1) / (count - 1)) : 0;
+                g2.setColor(mGradientColors[step]);
+                g2.drawLine((int) tree.x1(node), (int) tree.y1(node), (int) tree.x2(node), (int) tree.y2(node));
+            }
+            g2.dispose();
+
+            mDrawnImage = image;
+            mDrawnTree = tree;
+            mDrawnOrder = Arrays.copyOf(mDrawOrder, count);
+            mDrawnCount = count;
+            return count;
+        }
+
+        @Override
+        public void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setColor(Color.black);
+            g2.fillRect(0,  0, getWidth(), getHeight());
+            if (mImage != null) {
+                g2.drawImage(mImage, 0, 0, null);
+            }
+            if (getWidth() != mRequestedWidth || getHeight() != mRequestedHeight) {
+                // resized since the image was asked for
+                update(false);
+            }
+
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(Color.white);
+            g2.setStroke(mMarkerStroke);
+            g2.drawRect((int) mViewPoint.getX() - 2, (int) mViewPoint.getY() - 2, 4, 4);
+            g2.drawString("V", (int) mViewPoint.getX() + 5, (int) mViewPoint.getY() + 13);
+            if (mConeEnabled) {
+                for (double angle : new double[] { -VIEW_HALF_ANGLE, VIEW_HALF_ANGLE }) {
+                    double edgeX = mLookVector.x * Math.cos(angle) - mLookVector.y * Math.sin(angle);
+                    double edgeY = mLookVector.x * Math.sin(angle) + mLookVector.y * Math.cos(angle);
+                    g2.drawLine((int) mViewPoint.x, (int) mViewPoint.y, (int) (mViewPoint.x + edgeX * VIEW_EDGE_LENGTH),
+                            (int) (mViewPoint.y + edgeY * VIEW_EDGE_LENGTH));
+                }
+            }
+
+            g2.drawString(mLineCount + " lines, " + mSegmentCount + " segments.", 5, getHeight() - 5);
+        }
+    }
+
+    private static class Gradient {
+        private List<Stop> mStops;
+
+        public Gradient(Color start, Color end) {
+            mStops = new LinkedList<>();
+            mStops.add(new Stop(start, 0));
+            mStops.add(new Stop(end, 1));
+        }
+
+        public void addStop(double factor, Color color) {
+            if (factor < 0 || factor > 1) {
+                throw new IllegalArgumentException("factor must be >= 0 and <= 1");
+            }
+            for (int i = 0; i< mStops.size(); i++ ) {
+                Stop s = mStops.get(i);
+                if (factor > s.p) {
+                    continue;
+                } else if (factor == s.p) {
+                     s.c = color;
+                     return;
+                } else {
+                    mStops.add(i, new Stop(color, factor));
+                    return;
+                }
+            }
+        }
+
+        public Color getColor(double position) {
+            if (position <= 0) {
+                return mStops.get(0).c;
+            } else if (position >= 1) {
+                return mStops.get(mStops.size() - 1).c;
+            }
+
+            Stop prevStop = mStops.get(0);
+            Stop nextStop = prevStop;
+            for (int i = 0; i < mStops.size(); i++) {
+                Stop s = mStops.get(i);
+                if (position <= s.p) {
+                    nextStop = s;
+                    break;
+                } else {
+                    prevStop = s;
+                }
+            }
+
+            double range = nextStop.p - prevStop.p;
+            double lerp = (position - prevStop.p) / range;
+
+            double red = prevStop.c.getRed() + (nextStop.c.getRed() - prevStop.c.getRed()) * lerp;
+            double green = prevStop.c.getGreen() + (nextStop.c.getGreen() - prevStop.c.getGreen()) * lerp;
+            double blue = prevStop.c.getBlue() + (nextStop.c.getBlue() - prevStop.c.getBlue()) * lerp;
+            double alpha = prevStop.c.getAlpha() + (nextStop.c.getAlpha() - prevStop.c.getAlpha()) * lerp;
+            return new Color((int) red, (int) green, (int) blue, (int) alpha);
+        }
+
+        private class Stop {
+            Color c;
+            double p;
+            Stop(Color color, double pos) {
+                c = color;
+                p = pos;
+            }
+        }
+
+    }
+}
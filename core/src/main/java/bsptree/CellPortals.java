@@ -0,0 +1,509 @@
+package bsptree;
+
+import java.util.Arrays;
+
+
+/**
+ * The portals between the cells of a compiled tree, the openings that sight lines pass from one cell to the next
+ * through, and the segments each cell touches.
+ *
+ * A node's plane is cut down to the part inside the node's region and the node's segment taken out of it, leaving the
+ * openings between the cells either side. Each opening is pushed down both of the node's subtrees, splitting it at
+ * every plane it crosses and taking out the segments of any nodes along the same line, so every piece left joins one
+ * cell in front to one behind. Pieces are split with a small overlap and segments taken out a little short, so a
+ * portal may be slightly larger than the opening but never smaller. The slivers this leaves where segments meet are
+ * no longer than a few times that tolerance, and are dropped.
+ *
+ * Cells reaching past the tree are cut off at a margin around it as wide as the tree itself, and such cells are
+ * marked as open.
+ */
+class CellPortals {
+
+    // how far from a plane, as a fraction of the size of the tree, a point may be and still count as on it
+    private static final double TOLERANCE = 1e-9;
+    // portals no longer than this many times the tolerance are left out
+    static final double MIN_PORTAL = 4;
+
+    private final int mCellCount;
+    private final double mTolerance;
+
+    // the ends of each portal, and the cells in front of and behind it
+    private double[] mX1 = new double[64];
+    private double[] mY1 = new double[64];
+    private double[] mX2 = new double[64];
+    private double[] mY2 = new double[64];
+    private int[] mFrontCells = new int[64];
+    private int[] mBackCells = new int[64];
+    private int mPortalCount;
+
+    // the portals of each cell, cell n's from mCellPortals[mPortalOffsets[n]] up to mPortalOffsets[n + 1]
+    private final int[] mPortalOffsets;
+    private final int[] mCellPortals;
+
+    // the nodes whose segments each cell touches, held the same way
+    private final int[] mWallOffsets;
+    private final int[] mWalls;
+
+    // the shape of each cell, cut off at the margin
+    private final ConvexPolygon[] mCells;
+    private final boolean[] mOpen;
+
+    // the number of cells joined to each cell by portals, counting itself
+    private final int[] mConnectedCells;
+
+    // scratch space for pushing pieces of a line down the tree
+    private int[] mStackNodes = new int[64];
+    private double[] mStackFroms = new double[64];
+    private double[] mStackTos = new double[64];
+
+    CellPortals(CompiledBSPTree tree) {
+        mCellCount = tree.cellCount();
+        mCells = new ConvexPolygon[mCellCount];
+        mOpen = new boolean[mCellCount];
+        int root = CompiledBSPTree.ROOT;
+        if (tree.size() == 0) {
+            mTolerance = TOLERANCE;
+            mCells[0] = new ConvexPolygon(-1, -1, 1, 1);
+            mPortalOffsets = new int[mCellCount + 1];
+            mCellPortals = new int[0];
+            mWallOffsets = new int[mCellCount + 1];
+            mWalls = new int[0];
+            mConnectedCells = new int[] { 1 };
+            return;
+        }
+
+        double margin = Math.max(1, Math.max(tree.maxX(root) - tree.minX(root), tree.maxY(root) - tree.minY(root)));
+        mTolerance = TOLERANCE * margin;
+        double minX = tree.minX(root) - margin;
+        double minY = tree.minY(root) - margin;
+        double maxX = tree.maxX(root) + margin;
+        double maxY = tree.maxY(root) + margin;
+
+        // cut a box down the tree, finding the portals on each node's plane within its region and the cells that
+        // reach the box
+        Pieces front = new Pieces();
+        Pieces back = new Pieces();
+        ConvexPolygon[] polygons = new ConvexPolygon[16];
+        int[] nodes = new int[16];
+        int top = 0;
+        polygons[top] = new ConvexPolygon(minX, minY, maxX, maxY);
+        nodes[top++] = root;
+        while (top > 0) {
+            top--;
+            ConvexPolygon region = polygons[top];
+            int node = nodes[top];
+            polygons[top] = null;
+            addPortals(tree, node, region, front, back);
+
+            ConvexPolygon frontRegion = new ConvexPolygon(region);
+            frontRegion.clip(tree.a(node), tree.b(node), tree.c(node), true);
+            region.clip(tree.a(node), tree.b(node), tree.c(node), false);
+            if (top + 2 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                polygons = Arrays.copyOf(polygons, nodes.length);
+            }
+            int[] children = { tree.front(node), tree.back(node) };
+            ConvexPolygon[] childRegions = { frontRegion, region };
+            for (int i = 0; i < 2; i++) {
+                if (children[i] < 0) {
+                    mCells[~children[i]] = childRegions[i];
+                    mOpen[~children[i]] = reaches(childRegions[i], minX, minY, maxX, maxY);
+                } else {
+                    polygons[top] = childRegions[i];
+                    nodes[top++] = children[i];
+                }
+            }
+        }
+
+        // a segment touches the cells it is pushed down to, going down both sides of the planes along it
+        Pieces walls = new Pieces();
+        int[] wallNodes = new int[64];
+        for (int node = 0; node < tree.size(); node++) {
+            if (tree.a(node) != 0 || tree.b(node) != 0) {
+                int from = walls.mCount;
+                descend(tree, root, node, 0, 1, 0, walls);
+                if (walls.mCount > wallNodes.length) {
+                    wallNodes = Arrays.copyOf(wallNodes, Math.max(walls.mCount, wallNodes.length * 2));
+                }
+                Arrays.fill(wallNodes, from, walls.mCount, node);
+            }
+        }
+
+        int[] portalCells = new int[mPortalCount * 2];
+        int[] portals = new int[mPortalCount * 2];
+        for (int portal = 0; portal < mPortalCount; portal++) {
+            portalCells[2 * portal] = mFrontCells[portal];
+            portalCells[2 * portal + 1] = mBackCells[portal];
+            portals[2 * portal] = portal;
+            portals[2 * portal + 1] = portal;
+        }
+        mPortalOffsets = new int[mCellCount + 1];
+        mCellPortals = group(portalCells, portals, portalCells.length, mPortalOffsets);
+        mWallOffsets = new int[mCellCount + 1];
+        mWalls = group(walls.mCells, wallNodes, walls.mCount, mWallOffsets);
+        mConnectedCells = connectedCells();
+    }
+
+    int cellCount() {
+        return mCellCount;
+    }
+
+    int portalCount() {
+        return mPortalCount;
+    }
+
+    /**
+     * @return how far from a line a point may be and still count as on it
+     */
+    double tolerance() {
+        return mTolerance;
+    }
+
+    double x1(int portal) {
+        return mX1[portal];
+    }
+
+    double y1(int portal) {
+        return mY1[portal];
+    }
+
+    double x2(int portal) {
+        return mX2[portal];
+    }
+
+    double y2(int portal) {
+        return mY2[portal];
+    }
+
+    /**
+     * @return the cell in front of a portal, on the front side of the plane of the node it was found on
+     */
+    int frontCell(int portal) {
+        return mFrontCells[portal];
+    }
+
+    /**
+     * @return the cell on the other side of a portal from the given cell
+     */
+    int otherCell(int portal, int cell) {
+        return mFrontCells[portal] == cell ? mBackCells[portal] : mFrontCells[portal];
+    }
+
+    int portalsFrom(int cell) {
+        return mPortalOffsets[cell];
+    }
+
+    int portalsTo(int cell) {
+        return mPortalOffsets[cell + 1];
+    }
+
+    int portal(int index) {
+        return mCellPortals[index];
+    }
+
+    int wallsFrom(int cell) {
+        return mWallOffsets[cell];
+    }
+
+    int wallsTo(int cell) {
+        return mWallOffsets[cell + 1];
+    }
+
+    int wall(int index) {
+        return mWalls[index];
+    }
+
+    /**
+     * @return the shape of a cell, which must not be changed
+     */
+    ConvexPolygon cell(int cell) {
+        return mCells[cell];
+    }
+
+    /**
+     * @return true if the cell reaches the margin around the tree, so goes on past it
+     */
+    boolean isOpen(int cell) {
+        return mOpen[cell];
+    }
+
+    /**
+     * @return the number of cells joined to the given cell by portals, counting itself
+     */
+    int connectedCells(int cell) {
+        return mConnectedCells[cell];
+    }
+
+    /**
+     * Adds the portals on a node's plane, the parts of it inside the node's region not covered by segments.
+     */
+    private void addPortals(CompiledBSPTree tree, int node, ConvexPolygon region, Pieces front, Pieces back) {
+        double a = tree.a(node);
+        double b = tree.b(node);
+        double c = tree.c(node);
+        double length = Math.sqrt(a * a + b * b);
+        if (length == 0) {
+            return;
+        }
+        double x1 = tree.x1(node);
+        double y1 = tree.y1(node);
+        double dx = tree.x2(node) - x1;
+        double dy = tree.y2(node) - y1;
+        double squared = dx * dx + dy * dy;
+
+        // the range of the line, as fractions of the segment, inside the region, unless the region only touches it
+        // along one of its edges, in which case those portals belong to the plane that made the edge
+        boolean inFront = false;
+        boolean behind = false;
+        double from = Double.POSITIVE_INFINITY;
+        double to = Double.NEGATIVE_INFINITY;
+        int corners = region.corners();
+        for (int i = 0; i < corners; i++) {
+            int j = (i + 1) % corners;
+            double di = (a * region.x(i) + b * region.y(i) + c) / length;
+            double dj = (a * region.x(j) + b * region.y(j) + c) / length;
+            inFront |= di > mTolerance;
+            behind |= di < -mTolerance;
+            if ((di >= 0) != (dj >= 0) || di == 0) {
+                double t = di == dj ? 0 : di / (di - dj);
+                double x = region.x(i) + (region.x(j) - region.x(i)) * t;
+                double y = region.y(i) + (region.y(j) - region.y(i)) * t;
+                double along = ((x - x1) * dx + (y - y1) * dy) / squared;
+                from = Math.min(from, along);
+                to = Math.max(to, along);
+            }
+        }
+        if (!inFront || !behind) {
+            return;
+        }
+
+        // either side of the node's own segment, which is taken out a little short
+        double slack = mTolerance / Math.sqrt(squared);
+        double[] pieces = { from, Math.min(to, slack), Math.max(from, 1 - slack), to };
+        for (int piece = 0; piece < 4; piece += 2) {
+            if (pieces[piece] >= pieces[piece + 1]) {
+                continue;
+            }
+            front.mCount = 0;
+            descend(tree, tree.front(node), node, pieces[piece], pieces[piece + 1], 1, front);
+            for (int i = 0; i < front.mCount; i++) {
+                back.mCount = 0;
+                descend(tree, tree.back(node), node, front.mFroms[i], front.mTos[i], -1, back);
+                for (int j = 0; j < back.mCount; j++) {
+                    addPortal(front.mCells[i], back.mCells[j], x1 + dx * back.mFroms[j], y1 + dy * back.mFroms[j],
+                            x1 + dx * back.mTos[j], y1 + dy * back.mTos[j]);
+                }
+            }
+        }
+    }
+
+    private void addPortal(int frontCell, int backCell, double x1, double y1, double x2, double y2) {
+        // slivers left by the overlaps at corners, which no sight line passes through without touching a segment
+        if (Math.hypot(x2 - x1, y2 - y1) <= MIN_PORTAL * mTolerance) {
+            return;
+        }
+        if (mPortalCount == mX1.length) {
+            int capacity = mPortalCount * 2;
+            mX1 = Arrays.copyOf(mX1, capacity);
+            mY1 = Arrays.copyOf(mY1, capacity);
+            mX2 = Arrays.copyOf(mX2, capacity);
+            mY2 = Arrays.copyOf(mY2, capacity);
+            mFrontCells = Arrays.copyOf(mFrontCells, capacity);
+            mBackCells = Arrays.copyOf(mBackCells, capacity);
+        }
+        mX1[mPortalCount] = x1;
+        mY1[mPortalCount] = y1;
+        mX2[mPortalCount] = x2;
+        mY2[mPortalCount] = y2;
+        mFrontCells[mPortalCount] = frontCell;
+        mBackCells[mPortalCount] = backCell;
+        mPortalCount++;
+    }
+
+    /**
+     * Pushes part of a node's line down a subtree, splitting it at the planes it crosses.
+     * @param start the root of the subtree, a node number or a complemented cell number
+     * @param node the node whose line it is, the part being from {@code from} to {@code to} as fractions of the way
+     * along its segment
+     * @param side 1 or -1 to send the part down the side of planes along the line that is just in front of or behind
+     * the node's plane, taking out their segments, or 0 to send it down both sides and take out nothing
+     * @param out receives the cell and the range of each piece
+     */
+    private void descend(CompiledBSPTree tree, int start, int node, double from, double to, int side, Pieces out) {
+        double x1 = tree.x1(node);
+        double y1 = tree.y1(node);
+        double dx = tree.x2(node) - x1;
+        double dy = tree.y2(node) - y1;
+        double squared = dx * dx + dy * dy;
+        double slack = mTolerance / Math.sqrt(squared);
+
+        int top = 0;
+        push(top++, start, from, to);
+        while (top > 0) {
+            top--;
+            int entry = mStackNodes[top];
+            double t1 = mStackFroms[top];
+            double t2 = mStackTos[top];
+            if (entry < 0) {
+                out.add(~entry, t1, t2);
+                continue;
+            }
+
+            double a = tree.a(entry);
+            double b = tree.b(entry);
+            double length = Math.sqrt(a * a + b * b);
+            int front = tree.front(entry);
+            int back = tree.back(entry);
+            if (top + 2 > mStackNodes.length) {
+                mStackNodes = Arrays.copyOf(mStackNodes, mStackNodes.length * 2);
+                mStackFroms = Arrays.copyOf(mStackFroms, mStackNodes.length);
+                mStackTos = Arrays.copyOf(mStackTos, mStackNodes.length);
+            }
+            if (length == 0) {
+                // a plane of no length has every point behind it
+                push(top++, back, t1, t2);
+                continue;
+            }
+            double c = tree.c(entry);
+            double d1 = (a * (x1 + dx * t1) + b * (y1 + dy * t1) + c) / length;
+            double d2 = (a * (x1 + dx * t2) + b * (y1 + dy * t2) + c) / length;
+
+            // the line is along the plane if it is near it across the whole segment as well as the piece, as a short
+            // piece may be near a plane that crosses it
+            double u1 = Math.min(t1, 0);
+            double u2 = Math.max(t2, 1);
+            if (Math.abs(a * (x1 + dx * u1) + b * (y1 + dy * u1) + c) <= mTolerance * length
+                    && Math.abs(a * (x1 + dx * u2) + b * (y1 + dy * u2) + c) <= mTolerance * length) {
+                if (side == 0) {
+                    push(top++, front, t1, t2);
+                    push(top++, back, t1, t2);
+                    continue;
+                }
+                // along this plane, so its segment is a wall rather than an opening
+                double end1 = ((tree.x1(entry) - x1) * dx + (tree.y1(entry) - y1) * dy) / squared;
+                double end2 = ((tree.x2(entry) - x1) * dx + (tree.y2(entry) - y1) * dy) / squared;
+                double low = Math.min(end1, end2) + slack;
+                double high = Math.max(end1, end2) - slack;
+                int child = (a * tree.a(node) + b * tree.b(node)) * side > 0 ? front : back;
+                if (low >= high) {
+                    push(top++, child, t1, t2);
+                    continue;
+                }
+                if (t1 < Math.min(t2, low)) {
+                    push(top++, child, t1, Math.min(t2, low));
+                }
+                if (Math.max(t1, high) < t2) {
+                    push(top++, child, Math.max(t1, high), t2);
+                }
+                continue;
+            }
+
+            // the parts within the tolerance of the front and of the back, which overlap where the plane crosses
+            if (d1 >= -mTolerance || d2 >= -mTolerance) {
+                double t = t1 + (t2 - t1) * (d1 + mTolerance) / (d1 - d2);
+                push(top++, front, d1 >= -mTolerance ? t1 : t, d2 >= -mTolerance ? t2 : t);
+            }
+            if (d1 <= mTolerance || d2 <= mTolerance) {
+                double t = t1 + (t2 - t1) * (d1 - mTolerance) / (d1 - d2);
+                push(top++, back, d1 <= mTolerance ? t1 : t, d2 <= mTolerance ? t2 : t);
+            }
+        }
+    }
+
+    private void push(int index, int entry, double from, double to) {
+        mStackNodes[index] = entry;
+        mStackFroms[index] = from;
+        mStackTos[index] = to;
+    }
+
+    /**
+     * @return true if any corner of the region is on the edge of the box
+     */
+    private boolean reaches(ConvexPolygon region, double minX, double minY, double maxX, double maxY) {
+        for (int i = 0; i < region.corners(); i++) {
+            double x = region.x(i);
+            double y = region.y(i);
+            if (x <= minX + mTolerance || y <= minY + mTolerance || x >= maxX - mTolerance
+                    || y >= maxY - mTolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Floods through the portals from each cell not yet reached, counting the cells of each group reached together.
+     */
+    private int[] connectedCells() {
+        int[] groups = new int[mCellCount];
+        Arrays.fill(groups, -1);
+        int[] sizes = new int[mCellCount];
+        int[] stack = new int[mCellCount];
+        for (int start = 0; start < mCellCount; start++) {
+            if (groups[start] >= 0) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = start;
+            groups[start] = start;
+            while (top > 0) {
+                int cell = stack[--top];
+                sizes[start]++;
+                for (int i = mPortalOffsets[cell]; i < mPortalOffsets[cell + 1]; i++) {
+                    int other = otherCell(mCellPortals[i], cell);
+                    if (groups[other] < 0) {
+                        groups[other] = start;
+                        stack[top++] = other;
+                    }
+                }
+            }
+        }
+        int[] connected = new int[mCellCount];
+        for (int cell = 0; cell < mCellCount; cell++) {
+            connected[cell] = sizes[groups[cell]];
+        }
+        return connected;
+    }
+
+    /**
+     * Sorts values by the cell each goes with.
+     * @param offsets receives where each cell's values start, and the end of the last
+     * @return the values, cell n's from offsets[n] up to offsets[n + 1]
+     */
+    private int[] group(int[] cells, int[] values, int count, int[] offsets) {
+        for (int i = 0; i < count; i++) {
+            offsets[cells[i] + 1]++;
+        }
+        for (int cell = 0; cell < mCellCount; cell++) {
+            offsets[cell + 1] += offsets[cell];
+        }
+        int[] next = Arrays.copyOf(offsets, mCellCount);
+        int[] grouped = new int[count];
+        for (int i = 0; i < count; i++) {
+            grouped[next[cells[i]]++] = values[i];
+        }
+        return grouped;
+    }
+
+    /**
+     * Pieces of a line and the cells they ended up in.
+     */
+    private static class Pieces {
+        int[] mCells = new int[64];
+        double[] mFroms = new double[64];
+        double[] mTos = new double[64];
+        int mCount;
+
+        void add(int cell, double from, double to) {
+            if (mCount == mCells.length) {
+                mCells = Arrays.copyOf(mCells, mCount * 2);
+                mFroms = Arrays.copyOf(mFroms, mCount * 2);
+                mTos = Arrays.copyOf(mTos, mCount * 2);
+            }
+            mCells[mCount] = cell;
+            mFroms[mCount] = from;
+            mTos[mCount] = to;
+            mCount++;
+        }
+    }
+}
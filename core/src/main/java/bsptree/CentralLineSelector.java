@@ -0,0 +1,37 @@
+package bsptree;
+
+
+/**
+ * Chooses the line whose center is nearest to the average center of all lines being partitioned.
+ */
+public class CentralLineSelector implements BSPTree.SplitterSelector {
+
+    @Override
+    public int select(FragmentBuffer fragments, int from, int to, double epsilon) {
+        double centerX = 0, centerY = 0;
+        for (int i = from; i < to; i++) {
+            centerX += fragments.x1(i) + fragments.x2(i);
+            centerY += fragments.y1(i) + fragments.y2(i);
+        }
+
+        int size = to - from;
+        centerX /= 2 * size;
+        centerY /= 2 * size;
+
+        int nearestLine = from;
+        double nearestDist = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double dx = fragments.centerX(i) - centerX;
+            double dy = fragments.centerY(i) - centerY;
+
+            // comparing squared distances gives the same ordering without the sqrt
+            double dist = dx * dx + dy * dy;
+            if (dist < nearestDist) {
+                nearestDist = dist;
+                nearestLine = i;
+            }
+        }
+
+        return nearestLine;
+    }
+}
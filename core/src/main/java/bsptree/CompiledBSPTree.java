@@ -0,0 +1,743 @@
+package bsptree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.stream.IntStream;
+
+
+/**
+ * An immutable, flattened copy of a {@link BSPTree} held as parallel arrays indexed by node number. A tree loaded by
+ * {@link #load(Path)} reads the same values from views of the mapped file instead.
+ *
+ * Nodes are numbered in pre-order with the root at {@link #ROOT} and front subtrees before back subtrees, so every
+ * subtree occupies a contiguous range of node numbers. Each node's partitioning plane is kept in implicit form
+ * a*x + b*y + c, which is positive in front of the node's line and negative behind it.
+ *
+ * The empty child slots of the nodes are the cells of the tree, the convex regions the tree divides the plane into.
+ * Cells are numbered from 0 and a child slot holding cell n holds ~n in place of a node number. Points exactly on a
+ * node's plane belong behind it.
+ */
+public class CompiledBSPTree implements RayNodes {
+
+    public static final int ROOT = 0;
+
+    // how far past the ends of a segment, as a fraction of its length, a ray still counts as hitting it
+    static final double RAY_TOLERANCE = 1e-9;
+    // rays cast together on one thread by a batch raycast
+    private static final int RAY_CHUNK = 1024;
+
+    // file format: the magic number, version, node count and cell count, then each double array followed by each int
+    // array, all little-endian
+    private static final int FILE_MAGIC = 0x42535054;
+    private static final int FILE_VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int FILE_DOUBLE_ARRAYS = 11;
+    private static final int FILE_INT_ARRAYS = 3;
+
+    private final int mSize;
+    private final int mCellCount;
+
+    // a tree compiled in memory is held in arrays, and their views are null
+
+    // child node numbers, or the complement of the cell number where the node has no child on that side
+    private final int[] mFront;
+    private final int[] mBack;
+
+    // plane coefficients
+    private final double[] mA;
+    private final double[] mB;
+    private final double[] mC;
+
+    // line segment end points
+    private final double[] mX1;
+    private final double[] mY1;
+    private final double[] mX2;
+    private final double[] mY2;
+
+    // bounding box of each node's segment and all of its descendants' segments
+    private final double[] mMinX;
+    private final double[] mMinY;
+    private final double[] mMaxX;
+    private final double[] mMaxY;
+
+    // number of nodes in the subtree rooted at each node, which are numbered from that node onwards
+    private final int[] mSubtreeSizes;
+
+    // a loaded tree is held in views of the file in place of the arrays, which are null
+    private final IntBuffer mFrontView;
+    private final IntBuffer mBackView;
+    private final DoubleBuffer mAView;
+    private final DoubleBuffer mBView;
+    private final DoubleBuffer mCView;
+    private final DoubleBuffer mX1View;
+    private final DoubleBuffer mY1View;
+    private final DoubleBuffer mX2View;
+    private final DoubleBuffer mY2View;
+    private final DoubleBuffer mMinXView;
+    private final DoubleBuffer mMinYView;
+    private final DoubleBuffer mMaxXView;
+    private final DoubleBuffer mMaxYView;
+    private final IntBuffer mSubtreeSizesView;
+
+    CompiledBSPTree(BSPTree.Node root) {
+        mSize = count(root);
+        int[] fronts = new int[mSize];
+        int[] backs = new int[mSize];
+        double[] as = new double[mSize];
+        double[] bs = new double[mSize];
+        double[] cs = new double[mSize];
+        double[] x1s = new double[mSize];
+        double[] y1s = new double[mSize];
+        double[] x2s = new double[mSize];
+        double[] y2s = new double[mSize];
+        double[] minXs = new double[mSize];
+        double[] minYs = new double[mSize];
+        double[] maxXs = new double[mSize];
+        double[] maxYs = new double[mSize];
+
+        int cell = 0;
+        if (mSize > 0) {
+            // pre-order walk, each stack entry also records the parent node number and side that it is the child of
+            BSPTree.Node[] nodes = new BSPTree.Node[mSize];
+            int[] parents = new int[mSize];
+            boolean[] frontSides = new boolean[mSize];
+            int pending = 0;
+            nodes[pending++] = root;
+            parents[0] = -1;
+
+            int index = 0;
+            while (pending > 0) {
+                pending--;
+                BSPTree.Node node = nodes[pending];
+                int parent = parents[pending];
+                boolean frontSide = frontSides[pending];
+                nodes[pending] = null;
+
+                if (parent >= 0) {
+                    if (frontSide) {
+                        fronts[parent] = index;
+                    } else {
+                        backs[parent] = index;
+                    }
+                }
+
+                Line line = node.getLine();
+                fronts[index] = node.getFrontNode() == null ? ~cell++ : -1;
+                backs[index] = node.getBackNode() == null ? ~cell++ : -1;
+                as[index] = line.face.x;
+                bs[index] = line.face.y;
+                cs[index] = -(line.face.x * line.centerX + line.face.y * line.centerY);
+                x1s[index] = line.x1;
+                y1s[index] = line.y1;
+                x2s[index] = line.x2;
+                y2s[index] = line.y2;
+
+                // the front is pushed last so it is numbered first
+                if (node.getBackNode() != null) {
+                    nodes[pending] = node.getBackNode();
+                    parents[pending] = index;
+                    frontSides[pending] = false;
+                    pending++;
+                }
+                if (node.getFrontNode() != null) {
+                    nodes[pending] = node.getFrontNode();
+                    parents[pending] = index;
+                    frontSides[pending] = true;
+                    pending++;
+                }
+
+                index++;
+            }
+
+            // children are always numbered after their parent, so walking backwards visits them first
+            for (int i = mSize - 1; i >= 0; i--) {
+                minXs[i] = Math.min(x1s[i], x2s[i]);
+                minYs[i] = Math.min(y1s[i], y2s[i]);
+                maxXs[i] = Math.max(x1s[i], x2s[i]);
+                maxYs[i] = Math.max(y1s[i], y2s[i]);
+                for (int child : new int[] { fronts[i], backs[i] }) {
+                    if (child >= 0) {
+                        minXs[i] = Math.min(minXs[i], minXs[child]);
+                        minYs[i] = Math.min(minYs[i], minYs[child]);
+                        maxXs[i] = Math.max(maxXs[i], maxXs[child]);
+                        maxYs[i] = Math.max(maxYs[i], maxYs[child]);
+                    }
+                }
+            }
+        }
+        mCellCount = mSize == 0 ? 1 : cell;
+
+        mFront = fronts;
+        mBack = backs;
+        mA = as;
+        mB = bs;
+        mC = cs;
+        mX1 = x1s;
+        mY1 = y1s;
+        mX2 = x2s;
+        mY2 = y2s;
+        mMinX = minXs;
+        mMinY = minYs;
+        mMaxX = maxXs;
+        mMaxY = maxYs;
+        mSubtreeSizes = subtreeSizes(fronts, backs);
+
+        mFrontView = mBackView = mSubtreeSizesView = null;
+        mAView = mBView = mCView = mX1View = mY1View = mX2View = mY2View = null;
+        mMinXView = mMinYView = mMaxXView = mMaxYView = null;
+    }
+
+    /**
+     * Views a tree written by {@link #write(Path)} in a buffer positioned at the start of it, reading nothing but the
+     * header and checking the shape of the tree.
+     */
+    private CompiledBSPTree(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < FILE_HEADER_BYTES || buffer.getInt() != FILE_MAGIC) {
+            throw new IOException("Not a BSP tree file");
+        }
+        int version = buffer.getInt();
+        if (version != FILE_VERSION) {
+            throw new IOException("Unsupported BSP tree file version " + version);
+        }
+        mSize = buffer.getInt();
+        mCellCount = buffer.getInt();
+        if (mSize < 0 || buffer.remaining() != fileBytes(mSize) - FILE_HEADER_BYTES) {
+            throw new IOException("BSP tree file is truncated or corrupt");
+        }
+
+        mAView = doubles(buffer, mSize);
+        mBView = doubles(buffer, mSize);
+        mCView = doubles(buffer, mSize);
+        mX1View = doubles(buffer, mSize);
+        mY1View = doubles(buffer, mSize);
+        mX2View = doubles(buffer, mSize);
+        mY2View = doubles(buffer, mSize);
+        mMinXView = doubles(buffer, mSize);
+        mMinYView = doubles(buffer, mSize);
+        mMaxXView = doubles(buffer, mSize);
+        mMaxYView = doubles(buffer, mSize);
+        mFrontView = ints(buffer, mSize);
+        mBackView = ints(buffer, mSize);
+        mSubtreeSizesView = ints(buffer, mSize);
+
+        mFront = mBack = mSubtreeSizes = null;
+        mA = mB = mC = mX1 = mY1 = mX2 = mY2 = null;
+        mMinX = mMinY = mMaxX = mMaxY = null;
+        checkShape();
+    }
+
+    /**
+     * Checks that the children and cells of a loaded tree are those of a tree compiled in memory, so a corrupt file
+     * cannot send a walk out of the tree or round in a loop. Nodes must be numbered in pre-order, front subtrees
+     * first, with each subtree's size correct, and cells numbered in the order their slots are reached.
+     */
+    private void checkShape() throws IOException {
+        if (mSize == 0) {
+            if (mCellCount != 1) {
+                throw new IOException("BSP tree file is corrupt: an empty tree has " + mCellCount + " cells");
+            }
+            return;
+        }
+
+        int cell = 0;
+        for (int node = 0; node < mSize; node++) {
+            int front = front(node);
+            int back = back(node);
+            int frontSize = 0;
+            if (front >= 0) {
+                if (front != node + 1 || front >= mSize) {
+                    throw new IOException("BSP tree file is corrupt: node " + node + " has front child " + front);
+                }
+                frontSize = subtreeSize(front);
+            } else if (~front != cell++) {
+                throw new IOException("BSP tree file is corrupt: node " + node + " has front cell " + ~front);
+            }
+            int backSize = 0;
+            if (back >= 0) {
+                if (back != node + 1 + frontSize || back >= mSize) {
+                    throw new IOException("BSP tree file is corrupt: node " + node + " has back child " + back);
+                }
+                backSize = subtreeSize(back);
+            } else if (~back != cell++) {
+                throw new IOException("BSP tree file is corrupt: node " + node + " has back cell " + ~back);
+            }
+            int size = subtreeSize(node);
+            if (size != 1 + frontSize + backSize || node + size > mSize) {
+                throw new IOException("BSP tree file is corrupt: node " + node + " has subtree size " + size);
+            }
+        }
+        if (subtreeSize(ROOT) != mSize || cell != mCellCount) {
+            throw new IOException("BSP tree file is corrupt: its nodes do not form a single tree of " + mCellCount
+                    + " cells");
+        }
+    }
+
+    private static int[] subtreeSizes(int[] front, int[] back) {
+        int[] sizes = new int[front.length];
+        for (int i = sizes.length - 1; i >= 0; i--) {
+            sizes[i] = 1 + (front[i] >= 0 ? sizes[front[i]] : 0) + (back[i] >= 0 ? sizes[back[i]] : 0);
+        }
+        return sizes;
+    }
+
+    private static int count(BSPTree.Node root) {
+        if (root == null) {
+            return 0;
+        }
+
+        int count = 0;
+        Deque<BSPTree.Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            BSPTree.Node node = pending.pop();
+            count++;
+            if (node.getFrontNode() != null) {
+                pending.push(node.getFrontNode());
+            }
+            if (node.getBackNode() != null) {
+                pending.push(node.getBackNode());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the tree to a file in a compact binary form that {@link #load(Path)} can map straight back into memory.
+     * @param path the file to write, replacing any existing file
+     */
+    public void write(Path path) throws IOException {
+        long bytes = fileBytes(mSize);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Tree is too large for a single mapped file");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(FILE_MAGIC);
+            buffer.putInt(FILE_VERSION);
+            buffer.putInt(mSize);
+            buffer.putInt(mCellCount);
+
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            if (mA != null) {
+                for (double[] values : new double[][] { mA, mB, mC, mX1, mY1, mX2, mY2, mMinX, mMinY, mMaxX, mMaxY }) {
+                    doubles.put(values);
+                }
+            } else {
+                // duplicates, as copying from a buffer moves its position and other threads may be reading this tree
+                for (DoubleBuffer values : new DoubleBuffer[] { mAView, mBView, mCView, mX1View, mY1View, mX2View,
+                        mY2View, mMinXView, mMinYView, mMaxXView, mMaxYView }) {
+                    doubles.put(values.duplicate().clear());
+                }
+            }
+            buffer.position(buffer.position() + FILE_DOUBLE_ARRAYS * mSize * Double.BYTES);
+
+            IntBuffer ints = buffer.asIntBuffer();
+            if (mFront != null) {
+                for (int[] values : new int[][] { mFront, mBack, mSubtreeSizes }) {
+                    ints.put(values);
+                }
+            } else {
+                for (IntBuffer values : new IntBuffer[] { mFrontView, mBackView, mSubtreeSizesView }) {
+                    ints.put(values.duplicate().clear());
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Loads a tree written by {@link #write(Path)}. The file is memory-mapped and queried in place rather than
+     * copied, so loading costs little more than checking the tree's shape, creates no per-node objects, and
+     * processes loading the same file share its pages through the operating system's page cache. The file must not
+     * be changed while the tree is in use.
+     * @param path the file to load
+     * @return the tree
+     * @throws IOException if the file cannot be read or is not a tree of a supported version
+     */
+    public static CompiledBSPTree load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("BSP tree file is too large");
+            }
+            // the mapping outlives the channel
+            return new CompiledBSPTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static long fileBytes(int size) {
+        return FILE_HEADER_BYTES + (long) size * (FILE_DOUBLE_ARRAYS * Double.BYTES + FILE_INT_ARRAYS * Integer.BYTES);
+    }
+
+    /**
+     * @return a view of the next size doubles of the buffer, which is moved past them
+     */
+    private static DoubleBuffer doubles(ByteBuffer buffer, int size) {
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(size * Double.BYTES);
+        buffer.position(buffer.position() + size * Double.BYTES);
+        return slice.asDoubleBuffer();
+    }
+
+    /**
+     * @return a view of the next size ints of the buffer, which is moved past them
+     */
+    private static IntBuffer ints(ByteBuffer buffer, int size) {
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(size * Integer.BYTES);
+        buffer.position(buffer.position() + size * Integer.BYTES);
+        return slice.asIntBuffer();
+    }
+
+    public void accept(Visitor visitor) {
+        if (mSize > 0) {
+            visitor.visit(this, ROOT);
+        }
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of cells the tree divides the plane into
+     */
+    public int cellCount() {
+        return mCellCount;
+    }
+
+    /**
+     * @return the number of the cell containing the point
+     */
+    public int locate(double x, double y) {
+        if (mSize == 0) {
+            return 0;
+        }
+
+        int node = ROOT;
+        while (true) {
+            int next = side(node, x, y) > 0 ? front(node) : back(node);
+            if (next < 0) {
+                return ~next;
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Finds the cells containing many points.
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @param cells receives the number of the cell containing each point
+     */
+    public void locate(double[] xs, double[] ys, int[] cells) {
+        locate(xs, ys, cells, false);
+    }
+
+    /**
+     * Finds the cells containing many points, optionally sharing the points between the threads of the common
+     * fork/join pool.
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @param cells receives the number of the cell containing each point
+     * @param parallel true to locate the points on several threads
+     */
+    public void locate(double[] xs, double[] ys, int[] cells, boolean parallel) {
+        if (xs.length != ys.length || cells.length < xs.length) {
+            throw new IllegalArgumentException("xs and ys must be the same length and cells at least as long");
+        }
+
+        if (parallel) {
+            IntStream.range(0, xs.length).parallel().forEach(i -> cells[i] = locate(xs[i], ys[i]));
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                cells[i] = locate(xs[i], ys[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds the first segment along a ray. The tree is walked front to back, always visiting the side of a plane the
+     * ray starts on before the side it crosses into, so the walk ends at the first segment the ray hits.
+     * @param originX the x coordinate the ray starts from
+     * @param originY the y coordinate the ray starts from
+     * @param directionX the x component of the ray's direction
+     * @param directionY the y component of the ray's direction
+     * @param maxDistance how far along the ray to look
+     * @param hit receives the segment hit and where, or a node of -1 if nothing was hit
+     * @return true if a segment was hit
+     */
+    public boolean raycast(double originX, double originY, double directionX, double directionY, double maxDistance,
+            RayHit hit) {
+        if (mSize == 0) {
+            hit.clear();
+            return false;
+        }
+        return raycast(this, originX, originY, directionX, directionY, maxDistance, hit);
+    }
+
+    /**
+     * Finds the first segment along a ray through the nodes of a tree of at least one node, walking them as
+     * {@link #raycast(double, double, double, double, double, RayHit)} does. A child is only asked for once the ray
+     * is known to enter it.
+     * @param hit receives the number of the node hit and where, or a node of -1 if nothing was hit
+     * @return true if a segment was hit
+     */
+    static boolean raycast(RayNodes nodes, double originX, double originY, double directionX, double directionY,
+            double maxDistance, RayHit hit) {
+        hit.clear();
+        double length = Math.sqrt(directionX * directionX + directionY * directionY);
+        if (length == 0) {
+            return false;
+        }
+        double dx = directionX / length;
+        double dy = directionY / length;
+
+        double best = maxDistance;
+        int top = 0;
+        hit.mNodes[top] = ROOT;
+        hit.mNear[top] = 0;
+        hit.mFar[top] = maxDistance;
+        top++;
+        while (top > 0) {
+            top--;
+            int entry = hit.mNodes[top];
+            double near = hit.mNear[top];
+            // nothing past the nearest hit so far can be the first hit
+            double far = Math.min(hit.mFar[top], best);
+            if (near > far) {
+                continue;
+            }
+
+            if (entry < 0) {
+                // the ray crosses this node's plane at near, test whether it is within the node's segment
+                int node = ~entry;
+                double x = originX + dx * near;
+                double y = originY + dy * near;
+                double x1 = nodes.x1(node);
+                double y1 = nodes.y1(node);
+                double segmentX = nodes.x2(node) - x1;
+                double segmentY = nodes.y2(node) - y1;
+                double along = ((x - x1) * segmentX + (y - y1) * segmentY)
+                        / (segmentX * segmentX + segmentY * segmentY);
+                if (along >= -RAY_TOLERANCE && along <= 1 + RAY_TOLERANCE) {
+                    best = near;
+                    hit.node = node;
+                    hit.distance = near;
+                    hit.x = x;
+                    hit.y = y;
+                }
+                continue;
+            }
+
+            hit.nodesVisited++;
+            double a = nodes.a(entry);
+            double b = nodes.b(entry);
+            double startSide = a * originX + b * originY + nodes.c(entry);
+            double rate = a * dx + b * dy;
+            boolean startFront = startSide > 0;
+
+            // distance along the ray where it crosses the plane, infinite if it never does
+            double crossing = rate == 0 ? Double.POSITIVE_INFINITY : -startSide / rate;
+            if (crossing < 0) {
+                crossing = Double.POSITIVE_INFINITY;
+            }
+            // a plane along one the ray has already crossed is crossed at the same place, but rounding can put that
+            // just outside the range being tested, which would skip the plane's segment
+            if (crossing < near && crossing >= near - RAY_TOLERANCE * Math.max(1, near)) {
+                crossing = near;
+            } else if (crossing > far && crossing <= far + RAY_TOLERANCE * Math.max(1, far)) {
+                crossing = far;
+            }
+
+            // pushed far to near so the near side is popped first, and a ray that never crosses the plane, even one
+            // of unlimited length, never reaches the far side
+            hit.ensureStack(top + 3);
+            if (crossing <= far && crossing != Double.POSITIVE_INFINITY) {
+                int farChild = startFront ? nodes.back(entry) : nodes.front(entry);
+                if (farChild >= 0) {
+                    hit.mNodes[top] = farChild;
+                    hit.mNear[top] = Math.max(crossing, near);
+                    hit.mFar[top] = far;
+                    top++;
+                }
+                if (crossing >= near) {
+                    hit.mNodes[top] = ~entry;
+                    hit.mNear[top] = crossing;
+                    hit.mFar[top] = crossing;
+                    top++;
+                }
+            }
+            if (crossing >= near) {
+                int nearChild = startFront ? nodes.front(entry) : nodes.back(entry);
+                if (nearChild >= 0) {
+                    hit.mNodes[top] = nearChild;
+                    hit.mNear[top] = near;
+                    hit.mFar[top] = Math.min(crossing, far);
+                    top++;
+                }
+            }
+        }
+
+        return hit.isHit();
+    }
+
+    /**
+     * Casts many rays, optionally sharing them between the threads of the common fork/join pool.
+     * @param originXs the x coordinates the rays start from
+     * @param originYs the y coordinates the rays start from
+     * @param directionXs the x components of the rays' directions
+     * @param directionYs the y components of the rays' directions
+     * @param maxDistance how far along each ray to look
+     * @param nodes receives the node number of the segment each ray hit, or -1 if it hit nothing
+     * @param distances receives the distance along each ray to its hit, or NaN if it hit nothing
+     * @param parallel true to cast the rays on several threads
+     */
+    public void raycast(double[] originXs, double[] originYs, double[] directionXs, double[] directionYs,
+            double maxDistance, int[] nodes, double[] distances, boolean parallel) {
+        int count = originXs.length;
+        if (originYs.length != count || directionXs.length != count || directionYs.length != count
+                || nodes.length < count || distances.length < count) {
+            throw new IllegalArgumentException("ray arrays must be the same length and result arrays at least as long");
+        }
+
+        int chunks = (count + RAY_CHUNK - 1) / RAY_CHUNK;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        if (parallel) {
+            chunkStream = chunkStream.parallel();
+        }
+        chunkStream.forEach(chunk -> {
+            RayHit hit = new RayHit();
+            int end = Math.min(count, (chunk + 1) * RAY_CHUNK);
+            for (int i = chunk * RAY_CHUNK; i < end; i++) {
+                raycast(originXs[i], originYs[i], directionXs[i], directionYs[i], maxDistance, hit);
+                nodes[i] = hit.node;
+                distances[i] = hit.distance;
+            }
+        });
+    }
+
+    /**
+     * @return the node number of the front child of the given node, or a negative number if it has none
+     */
+    public int front(int node) {
+        return mFront != null ? mFront[node] : mFrontView.get(node);
+    }
+
+    /**
+     * @return the node number of the back child of the given node, or a negative number if it has none
+     */
+    public int back(int node) {
+        return mBack != null ? mBack[node] : mBackView.get(node);
+    }
+
+    /**
+     * @return the number of nodes in the subtree rooted at the given node, which are numbered from node to
+     * {@code node + subtreeSize(node) - 1}
+     */
+    public int subtreeSize(int node) {
+        return mSubtreeSizes != null ? mSubtreeSizes[node] : mSubtreeSizesView.get(node);
+    }
+
+    public boolean isLeaf(int node) {
+        return front(node) < 0 && back(node) < 0;
+    }
+
+    /**
+     * @return the unnormalised signed distance of the point from the node's line, positive in front and negative
+     * behind
+     */
+    public double side(int node, double x, double y) {
+        return a(node) * x + b(node) * y + c(node);
+    }
+
+    public double a(int node) {
+        return mA != null ? mA[node] : mAView.get(node);
+    }
+
+    public double b(int node) {
+        return mB != null ? mB[node] : mBView.get(node);
+    }
+
+    public double c(int node) {
+        return mC != null ? mC[node] : mCView.get(node);
+    }
+
+    public double x1(int node) {
+        return mX1 != null ? mX1[node] : mX1View.get(node);
+    }
+
+    public double y1(int node) {
+        return mY1 != null ? mY1[node] : mY1View.get(node);
+    }
+
+    public double x2(int node) {
+        return mX2 != null ? mX2[node] : mX2View.get(node);
+    }
+
+    public double y2(int node) {
+        return mY2 != null ? mY2[node] : mY2View.get(node);
+    }
+
+    public double centerX(int node) {
+        return (x1(node) + x2(node)) / 2;
+    }
+
+    public double centerY(int node) {
+        return (y1(node) + y2(node)) / 2;
+    }
+
+    /**
+     * @return the smallest x coordinate of the node's subtree
+     */
+    public double minX(int node) {
+        return mMinX != null ? mMinX[node] : mMinXView.get(node);
+    }
+
+    /**
+     * @return the smallest y coordinate of the node's subtree
+     */
+    public double minY(int node) {
+        return mMinY != null ? mMinY[node] : mMinYView.get(node);
+    }
+
+    /**
+     * @return the largest x coordinate of the node's subtree
+     */
+    public double maxX(int node) {
+        return mMaxX != null ? mMaxX[node] : mMaxXView.get(node);
+    }
+
+    /**
+     * @return the largest y coordinate of the node's subtree
+     */
+    public double maxY(int node) {
+        return mMaxY != null ? mMaxY[node] : mMaxYView.get(node);
+    }
+
+    /**
+     * Creates a new line for the node's segment. Labels are not kept by the compiled tree.
+     */
+    public Line line(int node) {
+        return new Line(x1(node), y1(node), x2(node), y2(node));
+    }
+
+    public static interface Visitor {
+        void visit(CompiledBSPTree tree, int node);
+    }
+}
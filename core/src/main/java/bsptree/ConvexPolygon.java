@@ -0,0 +1,135 @@
+package bsptree;
+
+import java.util.Arrays;
+
+
+/**
+ * A convex polygon that is cut down one plane at a time, used to find the shape of the cells of a tree. The
+ * corners are kept in order around the polygon in two growable arrays, so repeated clipping allocates nothing once
+ * they are large enough.
+ */
+class ConvexPolygon {
+
+    private double[] mX = new double[16];
+    private double[] mY = new double[16];
+    private int mCorners;
+
+    // the corners being clipped into, swapped with the corners after each clip
+    private double[] mClipX = new double[16];
+    private double[] mClipY = new double[16];
+
+    ConvexPolygon(double minX, double minY, double maxX, double maxY) {
+        setBox(minX, minY, maxX, maxY);
+    }
+
+    ConvexPolygon(ConvexPolygon polygon) {
+        mX = Arrays.copyOf(polygon.mX, Math.max(16, polygon.mCorners + 1));
+        mY = Arrays.copyOf(polygon.mY, mX.length);
+        mClipX = new double[mX.length];
+        mClipY = new double[mX.length];
+        mCorners = polygon.mCorners;
+    }
+
+    void setBox(double minX, double minY, double maxX, double maxY) {
+        mCorners = 4;
+        mX[0] = minX;
+        mY[0] = minY;
+        mX[1] = maxX;
+        mY[1] = minY;
+        mX[2] = maxX;
+        mY[2] = maxY;
+        mX[3] = minX;
+        mY[3] = maxY;
+    }
+
+    int corners() {
+        return mCorners;
+    }
+
+    double x(int corner) {
+        return mX[corner];
+    }
+
+    double y(int corner) {
+        return mY[corner];
+    }
+
+    boolean isEmpty() {
+        return mCorners < 3;
+    }
+
+    /**
+     * Cuts the polygon down to one side of the plane a*x + b*y + c, points on the plane counting as on both sides.
+     * @param keepFront true to keep the part where the plane is positive, false to keep the part where it is negative
+     */
+    void clip(double a, double b, double c, boolean keepFront) {
+        double sign = keepFront ? 1 : -1;
+        if (mClipX.length < mCorners + 1) {
+            mClipX = Arrays.copyOf(mClipX, (mCorners + 1) * 2);
+            mClipY = Arrays.copyOf(mClipY, (mCorners + 1) * 2);
+        }
+
+        int corners = 0;
+        for (int i = 0; i < mCorners; i++) {
+            int j = (i + 1) % mCorners;
+            double di = sign * (a * mX[i] + b * mY[i] + c);
+            double dj = sign * (a * mX[j] + b * mY[j] + c);
+            if (di >= 0) {
+                mClipX[corners] = mX[i];
+                mClipY[corners] = mY[i];
+                corners++;
+            }
+            if ((di >= 0) != (dj >= 0)) {
+                double t = di / (di - dj);
+                mClipX[corners] = mX[i] + (mX[j] - mX[i]) * t;
+                mClipY[corners] = mY[i] + (mY[j] - mY[i]) * t;
+                corners++;
+            }
+        }
+
+        double[] swap = mX;
+        mX = mClipX;
+        mClipX = swap;
+        swap = mY;
+        mY = mClipY;
+        mClipY = swap;
+        mCorners = corners;
+    }
+
+    /**
+     * @param tolerance how far from the plane a corner may be and still count as on it
+     * @return true unless every corner is clearly on the same side of the plane a*x + b*y + c
+     */
+    boolean crosses(double a, double b, double c, double tolerance) {
+        // the plane coefficients are not normalised, so scale the tolerance to match them
+        tolerance *= Math.sqrt(a * a + b * b);
+        boolean front = false;
+        boolean back = false;
+        for (int i = 0; i < mCorners; i++) {
+            double distance = a * mX[i] + b * mY[i] + c;
+            front |= distance > -tolerance;
+            back |= distance < tolerance;
+        }
+        return front && back;
+    }
+
+    /**
+     * @param tolerance how far from the plane a corner may be and still count as on it
+     * @return {@link Hyperplane#FRONT} or {@link Hyperplane#BACK} if the polygon is on one side of the plane
+     * a*x + b*y + c, counting a polygon lying along the plane as in front, otherwise {@link Hyperplane#SPANNING}
+     */
+    int classify(double a, double b, double c, double tolerance) {
+        tolerance *= Math.sqrt(a * a + b * b);
+        boolean front = false;
+        boolean back = false;
+        for (int i = 0; i < mCorners; i++) {
+            double distance = a * mX[i] + b * mY[i] + c;
+            front |= distance > tolerance;
+            back |= distance < -tolerance;
+        }
+        if (front && back) {
+            return Hyperplane.SPANNING;
+        }
+        return back ? Hyperplane.BACK : Hyperplane.FRONT;
+    }
+}
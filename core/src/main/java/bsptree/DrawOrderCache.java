@@ -0,0 +1,194 @@
+package bsptree;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Remembers the draw orders of a {@link CompiledBSPTree} for the cells viewpoints were in, so a viewpoint that moves
+ * around inside a cell is given its order for the cost of locating the cell.
+ *
+ * The order is not quite a function of the cell alone. The planes of nodes off the path to the cell can still cross
+ * it, and which side of those the viewpoint is on decides the order within their subtrees. So each entry also keeps
+ * the planes that cross its cell, and the side of each the order was computed from, and is only used while the
+ * viewpoint is on the same sides. Entries are discarded, least recently used first, once there are more than the
+ * capacity, and all of them are discarded when a different tree is drawn.
+ *
+ * A cache must not be shared between threads.
+ */
+public class DrawOrderCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    // how far from a plane, as a fraction of the size of the cell's bounds, a cell corner still counts as on it
+    private static final double PLANE_TOLERANCE = 1e-9;
+
+    private final Map<Integer, CachedOrder> mEntries;
+    private CompiledBSPTree mTree;
+    private long mHits;
+    private long mMisses;
+
+    // computes the orders on a miss, the viewpoint is moved in place
+    private final Point2D.Double mViewPoint = new Point2D.Double();
+    private final DrawOrderVisitor mVisitor = new DrawOrderVisitor(mViewPoint);
+
+    // the cell being measured on a miss
+    private final ConvexPolygon mCell = new ConvexPolygon(0, 0, 0, 0);
+
+    public DrawOrderCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the most cells to remember draw orders for
+     */
+    public DrawOrderCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        mEntries = new LinkedHashMap<Integer, CachedOrder>(16, 0.75f, true) {
+            private static final long serialVersionUID = -3961530962342418104L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedOrder> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Writes the draw order of a tree, as {@link DrawOrderVisitor#drawOrder} would without a view cone, from the
+     * cache if it can.
+     * @param tree the tree to draw, the cache is emptied if this is not the tree it was last given
+     * @param viewPoint where the tree is seen from
+     * @param out receives the node numbers in draw order, it must hold at least {@code tree.size()} nodes
+     * @return the number of node numbers written to out
+     */
+    public int drawOrder(CompiledBSPTree tree, Point2D.Double viewPoint, int[] out) {
+        if (out.length < tree.size()) {
+            throw new IllegalArgumentException("out must hold at least tree.size() nodes");
+        }
+        if (tree != mTree) {
+            invalidate();
+            mTree = tree;
+        }
+        if (tree.size() == 0) {
+            return 0;
+        }
+
+        double x = viewPoint.x;
+        double y = viewPoint.y;
+        Integer cell = tree.locate(x, y);
+        CachedOrder entry = mEntries.get(cell);
+        if (entry != null && entry.matches(tree, x, y)) {
+            mHits++;
+            System.arraycopy(entry.mOrder, 0, out, 0, entry.mOrder.length);
+            return entry.mOrder.length;
+        }
+
+        mMisses++;
+        mViewPoint.setLocation(x, y);
+        int count = mVisitor.drawOrder(tree, out);
+        entry = measure(tree, x, y);
+        if (entry != null) {
+            entry.mOrder = Arrays.copyOf(out, count);
+            mEntries.put(cell, entry);
+        }
+        return count;
+    }
+
+    /**
+     * Discards every remembered draw order.
+     */
+    public void invalidate() {
+        mEntries.clear();
+        mTree = null;
+    }
+
+    /**
+     * @return the number of draw orders found in the cache
+     */
+    public long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of draw orders that had to be computed
+     */
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Finds the bounds within which the draw order from a viewpoint stays the same: the viewpoint's cell, clipped to
+     * a box around the tree and the viewpoint, and the sides of the planes crossing it.
+     * @return the entry without its order, or null if the order is one the cache cannot reuse
+     */
+    private CachedOrder measure(CompiledBSPTree tree, double x, double y) {
+        int root = CompiledBSPTree.ROOT;
+        double margin = Math.max(1, Math.max(tree.maxX(root) - tree.minX(root), tree.maxY(root) - tree.minY(root)));
+        CachedOrder entry = new CachedOrder();
+        entry.mMinX = Math.min(tree.minX(root), x) - margin;
+        entry.mMinY = Math.min(tree.minY(root), y) - margin;
+        entry.mMaxX = Math.max(tree.maxX(root), x) + margin;
+        entry.mMaxY = Math.max(tree.maxY(root), y) + margin;
+
+        mCell.setBox(entry.mMinX, entry.mMinY, entry.mMaxX, entry.mMaxY);
+
+        // the same walk as locating the cell, cutting away the side of each plane the viewpoint is not on
+        int node = root;
+        while (node >= 0) {
+            boolean inFront = tree.side(node, x, y) > 0;
+            mCell.clip(tree.a(node), tree.b(node), tree.c(node), inFront);
+            node = inFront ? tree.front(node) : tree.back(node);
+        }
+
+        double tolerance = PLANE_TOLERANCE * Math.max(entry.mMaxX - entry.mMinX, entry.mMaxY - entry.mMinY);
+        int[] checks = new int[16];
+        int checkCount = 0;
+        for (int i = 0; i < tree.size(); i++) {
+            if (tree.isLeaf(i) || !mCell.crosses(tree.a(i), tree.b(i), tree.c(i), tolerance)) {
+                continue;
+            }
+            if (tree.centerX(i) == x && tree.centerY(i) == y) {
+                // the visitor orders a node seen from its own center differently to any other point
+                return null;
+            }
+            if (checkCount == checks.length) {
+                checks = Arrays.copyOf(checks, checkCount * 2);
+            }
+            checks[checkCount++] = tree.side(i, x, y) > 0 ? ~i : i;
+        }
+        entry.mChecks = Arrays.copyOf(checks, checkCount);
+        return entry;
+    }
+
+    private static class CachedOrder {
+        int[] mOrder;
+
+        // the box the cell was clipped to
+        double mMinX;
+        double mMinY;
+        double mMaxX;
+        double mMaxY;
+
+        // nodes whose planes cross the cell, complemented where the viewpoint was in front of the plane
+        int[] mChecks;
+
+        boolean matches(CompiledBSPTree tree, double x, double y) {
+            if (x < mMinX || x > mMaxX || y < mMinY || y > mMaxY) {
+                return false;
+            }
+            for (int check : mChecks) {
+                int node = check < 0 ? ~check : check;
+                if ((tree.side(node, x, y) > 0) != (check < 0)
+                        || (tree.centerX(node) == x && tree.centerY(node) == y)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package bsptree;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+
+public class DrawOrderVisitor implements BSPTree.Visitor, CompiledBSPTree.Visitor {
+
+    // viewpoints ordered together on one thread by a batch draw order
+    private static final int BATCH_CHUNK = 16;
+
+    private List<BSPTree.Node> mDrawOrder = new ArrayList<>();
+    private int[] mNodeOrder = new int[0];
+    private int mNodeCount;
+    private int mNodesVisited;
+    private int[] mStack = new int[64];
+    private Point2D.Double mViewPoint;
+
+    // incremental updates: where each node is in the order being updated, scratch space for swapping spans, and the
+    // index of the planes of the tree last updated with the planes it found
+    private int[] mPositions = new int[0];
+    private int[] mSpan = new int[0];
+    private CompiledBSPTree mIndexedTree;
+    private PlaneIndex mPlaneIndex;
+    private int[] mCrossings = new int[0];
+
+    // optional view cone, a normalised look direction, the sine and cosine of the half-angle, and the directions of
+    // its two edges
+    private boolean mConeEnabled;
+    private double mLookX;
+    private double mLookY;
+    private double mConeSin;
+    private double mConeCos;
+    private double mEdgeX1;
+    private double mEdgeY1;
+    private double mEdgeX2;
+    private double mEdgeY2;
+
+    // optional potentially visible set, and which nodes and subtrees of the last cell looked from it marks visible
+    private PotentiallyVisibleSet mVisibleSet;
+    private CompiledBSPTree mVisibleTree;
+    private int mVisibleCell;
+    private long[] mVisibleNodes = new long[0];
+    private boolean[] mVisibleSubtrees = new boolean[0];
+
+    public DrawOrderVisitor(Point2D.Double viewPoint) {
+        if (viewPoint == null) {
+            throw new NullPointerException("Viewpoint cannot be null");
+        }
+        mViewPoint = viewPoint;
+    }
+
+    /**
+     * Restricts the draw order to segments that touch a cone of view from the viewpoint. When visiting a compiled
+     * tree whole subtrees whose bounds are outside the cone are skipped, when visiting nodes only their own segments
+     * are.
+     * @param lookVector the direction the cone faces
+     * @param halfAngle the angle in radians between the look vector and the edge of the cone, at most PI / 2
+     */
+    public void setViewCone(Vec lookVector, double halfAngle) {
+        if (!(halfAngle > 0 && halfAngle <= Math.PI / 2)) {
+            throw new IllegalArgumentException("halfAngle must be > 0 and <= PI / 2");
+        }
+        if (lookVector.x == 0 && lookVector.y == 0) {
+            throw new IllegalArgumentException("lookVector must have a direction");
+        }
+        Vec look = new Vec(lookVector.x, lookVector.y).normalise();
+        mLookX = look.x;
+        mLookY = look.y;
+        mConeSin = Math.sin(halfAngle);
+        mConeCos = Math.cos(halfAngle);
+        mEdgeX1 = mLookX * mConeCos - mLookY * mConeSin;
+        mEdgeY1 = mLookX * mConeSin + mLookY * mConeCos;
+        mEdgeX2 = mLookX * mConeCos + mLookY * mConeSin;
+        mEdgeY2 = -mLookX * mConeSin + mLookY * mConeCos;
+        mConeEnabled = true;
+    }
+
+    public void clearViewCone() {
+        mConeEnabled = false;
+    }
+
+    /**
+     * Restricts the draw order of a compiled tree, from {@link #drawOrder}, to segments that may be visible from the
+     * viewpoint's cell, skipping whole subtrees with nothing visible.
+     * @param visibleSet the segments visible from each cell, computed for the tree that will be drawn
+     */
+    public void setPotentiallyVisibleSet(PotentiallyVisibleSet visibleSet) {
+        if (visibleSet == null) {
+            throw new NullPointerException("visibleSet cannot be null");
+        }
+        mVisibleSet = visibleSet;
+        mVisibleTree = null;
+    }
+
+    public void clearPotentiallyVisibleSet() {
+        mVisibleSet = null;
+        mVisibleTree = null;
+    }
+
+    public List<BSPTree.Node> getDrawOrder() {
+        return mDrawOrder;
+    }
+
+    /**
+     * @return the node numbers collected by visiting a {@link CompiledBSPTree}, in draw order
+     */
+    public int[] getNodeOrder() {
+        return Arrays.copyOf(mNodeOrder, mNodeCount);
+    }
+
+    /**
+     * Counts nodes examined since the last {@link #reset()}, or during the last {@link #drawOrder} call, including
+     * nodes examined and then culled by the view cone.
+     * @return the number of nodes examined
+     */
+    public int getNodesVisited() {
+        return mNodesVisited;
+    }
+
+    /**
+     * Writes the draw order of a compiled tree into the given buffer without recursion and, once the visitor's stack
+     * has grown to fit the tree, without allocating. The viewpoint is read on every call, so it can be moved in place
+     * between frames.
+     * @param tree the tree to traverse
+     * @param out receives the node numbers in draw order, it must hold at least {@code tree.size()} nodes
+     * @return the number of node numbers written to out
+     */
+    public int drawOrder(CompiledBSPTree tree, int[] out) {
+        if (out.length < tree.size()) {
+            throw new IllegalArgumentException("out must hold at least tree.size() nodes");
+        }
+        if (tree.size() == 0) {
+            return 0;
+        }
+
+        double x = mViewPoint.x;
+        double y = mViewPoint.y;
+        int count = 0;
+        int visited = 0;
+        boolean[] visibleSubtrees = mVisibleSet == null ? null : visibleSubtrees(tree, x, y);
+
+        // node numbers waiting to be expanded, or the complement of node numbers waiting to be drawn
+        int[] stack = mStack;
+        int top = 0;
+        stack[top++] = CompiledBSPTree.ROOT;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry < 0) {
+                if ((!mConeEnabled || segmentInCone(tree, ~entry))
+                        && (visibleSubtrees == null || isVisible(~entry))) {
+                    out[count++] = ~entry;
+                }
+                continue;
+            }
+
+            visited++;
+            if (mConeEnabled && !subtreeInCone(tree, entry)
+                    || visibleSubtrees != null && !visibleSubtrees[entry]) {
+                continue;
+            }
+
+            int front = tree.front(entry);
+            int back = tree.back(entry);
+            if (front < 0 && back < 0) {
+                if ((!mConeEnabled || segmentInCone(tree, entry)) && (visibleSubtrees == null || isVisible(entry))) {
+                    out[count++] = entry;
+                }
+                continue;
+            }
+
+            if (top + 3 > stack.length) {
+                stack = mStack = Arrays.copyOf(stack, stack.length * 2);
+            }
+
+            // entries are pushed in the reverse of the order they are drawn
+            if (tree.centerX(entry) == x && tree.centerY(entry) == y) {
+                if (back >= 0) {
+                    stack[top++] = back;
+                }
+                if (front >= 0) {
+                    stack[top++] = front;
+                }
+            } else {
+                boolean inFront = tree.side(entry, x, y) > 0;
+                int first = inFront ? back : front;
+                int last = inFront ? front : back;
+                if (last >= 0) {
+                    stack[top++] = last;
+                }
+                stack[top++] = ~entry;
+                if (first >= 0) {
+                    stack[top++] = first;
+                }
+            }
+        }
+
+        mNodesVisited = visited;
+        return count;
+    }
+
+    /**
+     * Finds the draw orders of a tree from many viewpoints, optionally sharing them between the threads of the common
+     * fork/join pool. Each group of viewpoints handled together has its own visitor and buffer, and nothing else is
+     * shared, so any number of threads may call this at once.
+     * @param tree the tree to traverse
+     * @param viewPoints where the tree is seen from
+     * @param parallel true to find the orders on several threads
+     * @return the node numbers in draw order from each viewpoint, with no view cone
+     */
+    public static int[][] drawOrders(CompiledBSPTree tree, Point2D.Double[] viewPoints, boolean parallel) {
+        int count = viewPoints.length;
+        int[][] orders = new int[count][];
+        int chunks = (count + BATCH_CHUNK - 1) / BATCH_CHUNK;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        if (parallel) {
+            chunkStream = chunkStream.parallel();
+        }
+        chunkStream.forEach(chunk -> {
+            Point2D.Double viewPoint = new Point2D.Double();
+            DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+            int[] order = new int[tree.size()];
+            int end = Math.min(count, (chunk + 1) * BATCH_CHUNK);
+            for (int i = chunk * BATCH_CHUNK; i < end; i++) {
+                viewPoint.setLocation(viewPoints[i]);
+                orders[i] = Arrays.copyOf(order, visitor.drawOrder(tree, order));
+            }
+        });
+        return orders;
+    }
+
+    /**
+     * Updates a draw order written by {@link #drawOrder} for a viewpoint that has since moved to this visitor's
+     * viewpoint. Only nodes whose planes lie between the two viewpoints change order, and the spans of the two
+     * subtrees of each of those are swapped in place. Those nodes are found from an index of the tree's planes, built
+     * on the first update of each tree, which only opens the parts of the index near planes the move may cross, so a
+     * small move costs far less than a pass over the tree. Orders culled by a view cone or a potentially visible set,
+     * or seen from the center of a node, are recomputed in full.
+     * @param tree the tree the order was written for
+     * @param order the draw order from the old viewpoint, which is updated in place
+     * @param count the number of node numbers in order
+     * @param oldViewPoint the viewpoint the order was written for
+     * @return the number of node numbers now in order
+     */
+    public int updateDrawOrder(CompiledBSPTree tree, int[] order, int count, Point2D.Double oldViewPoint) {
+        if (order.length < tree.size()) {
+            throw new IllegalArgumentException("order must hold at least tree.size() nodes");
+        }
+        if (mConeEnabled || mVisibleSet != null || count != tree.size()) {
+            return drawOrder(tree, order);
+        }
+
+        if (tree != mIndexedTree) {
+            mPlaneIndex = new PlaneIndex(tree);
+            mIndexedTree = tree;
+            if (mCrossings.length < count) {
+                mCrossings = new int[count];
+            }
+        }
+
+        double x = mViewPoint.x;
+        double y = mViewPoint.y;
+        double oldX = oldViewPoint.x;
+        double oldY = oldViewPoint.y;
+        int candidates = mPlaneIndex.crossings(oldX, oldY, x, y, mCrossings);
+
+        // keep the candidates whose planes the move does cross
+        int crossings = 0;
+        for (int i = 0; i < candidates; i++) {
+            int node = mCrossings[i];
+            double a = tree.a(node);
+            double b = tree.b(node);
+            double c = tree.c(node);
+            double side = a * x + b * y + c;
+            double oldSide = a * oldX + b * oldY + c;
+            if (Math.abs(side) <= 1e-9 * (Math.abs(a * x) + Math.abs(b * y) + Math.abs(c))
+                    && tree.centerX(node) == x && tree.centerY(node) == y) {
+                return drawOrder(tree, order);
+            }
+
+            // the product is only zero when a side is zero or too small to multiply, so settle those exactly
+            double product = side * oldSide;
+            if (product < 0 || product == 0 && (side > 0) != (oldSide > 0)) {
+                mCrossings[crossings++] = node;
+            }
+        }
+        mNodesVisited = candidates;
+        if (crossings == 0) {
+            return count;
+        }
+
+        // nodes are numbered in pre-order, so in that order a node's span is always swapped after its ancestors' spans
+        Arrays.sort(mCrossings, 0, crossings);
+        position(order, count);
+        for (int i = 0; i < crossings; i++) {
+            int node = mCrossings[i];
+            swapSpans(tree, order, node, tree.side(node, oldX, oldY) > 0);
+        }
+        return count;
+    }
+
+    /**
+     * Expands the potentially visible set for the viewpoint's cell, unless it is the cell last expanded.
+     * @return whether anything in the subtree of each node may be visible
+     */
+    private boolean[] visibleSubtrees(CompiledBSPTree tree, double x, double y) {
+        if (mVisibleSet.size() != tree.size() || mVisibleSet.cellCount() != tree.cellCount()) {
+            throw new IllegalArgumentException("potentially visible set was computed for a different tree");
+        }
+        int cell = tree.locate(x, y);
+        if (tree == mVisibleTree && cell == mVisibleCell) {
+            return mVisibleSubtrees;
+        }
+
+        int size = tree.size();
+        if (mVisibleSubtrees.length < size) {
+            mVisibleNodes = new long[(size + 63) >>> 6];
+            mVisibleSubtrees = new boolean[size];
+        }
+        mVisibleSet.visibleNodes(cell, mVisibleNodes);
+        // children are numbered after their parents, so walking backwards sees them first
+        for (int node = size - 1; node >= 0; node--) {
+            int front = tree.front(node);
+            int back = tree.back(node);
+            mVisibleSubtrees[node] = isVisible(node) || front >= 0 && mVisibleSubtrees[front]
+                    || back >= 0 && mVisibleSubtrees[back];
+        }
+        mVisibleTree = tree;
+        mVisibleCell = cell;
+        return mVisibleSubtrees;
+    }
+
+    private boolean isVisible(int node) {
+        return (mVisibleNodes[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void position(int[] order, int count) {
+        if (mPositions.length < count) {
+            mPositions = new int[count];
+            mSpan = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mPositions[order[i]] = i;
+        }
+    }
+
+    /**
+     * Turns the span of a node's subtree from one subtree, the node, and the other subtree into the other subtree, the
+     * node, and the one subtree.
+     */
+    private void swapSpans(CompiledBSPTree tree, int[] order, int node, boolean wasInFront) {
+        int first = wasInFront ? tree.back(node) : tree.front(node);
+        int last = wasInFront ? tree.front(node) : tree.back(node);
+        int firstSize = first >= 0 ? tree.subtreeSize(first) : 0;
+        int lastSize = last >= 0 ? tree.subtreeSize(last) : 0;
+        int start = mPositions[node] - firstSize;
+        int end = start + firstSize + 1 + lastSize;
+
+        System.arraycopy(order, start, mSpan, 0, end - start);
+        System.arraycopy(mSpan, firstSize + 1, order, start, lastSize);
+        order[start + lastSize] = node;
+        System.arraycopy(mSpan, 0, order, start + lastSize + 1, firstSize);
+        for (int i = start; i < end; i++) {
+            mPositions[order[i]] = i;
+        }
+    }
+
+    public void reset() {
+        mDrawOrder = new ArrayList<>();
+        mNodeCount = 0;
+        mNodesVisited = 0;
+    }
+
+    @Override
+    public void visit(BSPTree.Node node) {
+        mNodesVisited++;
+        if (node.isLeaf()) {
+            addNode(node);
+        } else {
+            if (lineInsideViewpoint(node.getLine())) {
+                tryVisit(node.getFrontNode());
+                tryVisit(node.getBackNode());
+            } else {
+                if (node.getLine().pointInFront(mViewPoint)) {
+                    tryVisit(node.getBackNode());
+                    addNode(node);
+                    tryVisit(node.getFrontNode());
+                } else {
+                    tryVisit(node.getFrontNode());
+                    addNode(node);
+                    tryVisit(node.getBackNode());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void visit(CompiledBSPTree tree, int node) {
+        mNodesVisited++;
+        if (mConeEnabled && !subtreeInCone(tree, node)) {
+            return;
+        }
+
+        if (tree.isLeaf(node)) {
+            addNode(tree, node);
+        } else {
+            int front = tree.front(node);
+            int back = tree.back(node);
+            if (tree.centerX(node) == mViewPoint.x && tree.centerY(node) == mViewPoint.y) {
+                tryVisit(tree, front);
+                tryVisit(tree, back);
+            } else {
+                if (tree.side(node, mViewPoint.x, mViewPoint.y) > 0) {
+                    tryVisit(tree, back);
+                    addNode(tree, node);
+                    tryVisit(tree, front);
+                } else {
+                    tryVisit(tree, front);
+                    addNode(tree, node);
+                    tryVisit(tree, back);
+                }
+            }
+        }
+    }
+
+    private void tryVisit(BSPTree.Node node) {
+        if (node != null) {
+            node.accept(this);
+        }
+    }
+
+    private void tryVisit(CompiledBSPTree tree, int node) {
+        if (node >= 0) {
+            visit(tree, node);
+        }
+    }
+
+    private void addNode(BSPTree.Node node) {
+        Line line = node.getLine();
+        if (!mConeEnabled || segmentInCone(line.x1, line.y1, line.x2, line.y2)) {
+            mDrawOrder.add(node);
+        }
+    }
+
+    private void addNode(CompiledBSPTree tree, int node) {
+        if (!mConeEnabled || segmentInCone(tree.x1(node), tree.y1(node), tree.x2(node), tree.y2(node))) {
+            addNode(node);
+        }
+    }
+
+    private void addNode(int node) {
+        if (mNodeCount == mNodeOrder.length) {
+            mNodeOrder = Arrays.copyOf(mNodeOrder, Math.max(16, mNodeCount * 2));
+        }
+        mNodeOrder[mNodeCount++] = node;
+    }
+
+    private boolean subtreeInCone(CompiledBSPTree tree, int node) {
+        double halfWidth = (tree.maxX(node) - tree.minX(node)) / 2;
+        double halfHeight = (tree.maxY(node) - tree.minY(node)) / 2;
+        return circleInCone(tree.minX(node) + halfWidth, tree.minY(node) + halfHeight,
+                Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight));
+    }
+
+    private boolean segmentInCone(CompiledBSPTree tree, int node) {
+        return segmentInCone(tree.x1(node), tree.y1(node), tree.x2(node), tree.y2(node));
+    }
+
+    /**
+     * Tests whether a segment touches the view cone, which it does if either end is inside the cone or it crosses
+     * one of the cone's edges.
+     */
+    private boolean segmentInCone(double x1, double y1, double x2, double y2) {
+        return pointInCone(x1, y1) || pointInCone(x2, y2) || crossesEdge(x1, y1, x2, y2, mEdgeX1, mEdgeY1)
+                || crossesEdge(x1, y1, x2, y2, mEdgeX2, mEdgeY2);
+    }
+
+    private boolean pointInCone(double x, double y) {
+        double dx = x - mViewPoint.x;
+        double dy = y - mViewPoint.y;
+        double along = mLookX * dx + mLookY * dy;
+        return along >= 0 && along * along >= (dx * dx + dy * dy) * mConeCos * mConeCos;
+    }
+
+    /**
+     * @return true if the segment crosses the edge of the cone leaving the viewpoint in the given direction
+     */
+    private boolean crossesEdge(double x1, double y1, double x2, double y2, double edgeX, double edgeY) {
+        double segmentX = x2 - x1;
+        double segmentY = y2 - y1;
+        double denominator = edgeX * segmentY - edgeY * segmentX;
+        if (denominator == 0) {
+            return false;
+        }
+        // the edge meets the segment t along the edge and u along the segment
+        double startX = x1 - mViewPoint.x;
+        double startY = y1 - mViewPoint.y;
+        double t = (startX * segmentY - startY * segmentX) / denominator;
+        double u = (startX * edgeY - startY * edgeX) / denominator;
+        return t >= 0 && u >= 0 && u <= 1;
+    }
+
+    /**
+     * Conservatively tests whether a circle overlaps the view cone, after "Intersection of a Sphere and a Cone" by
+     * David Eberly. The apex is moved back along the look vector so that the cone grown by the circle's radius can be
+     * tested against the circle's center, then circles that are only inside that wider cone behind the real apex are
+     * rejected unless they contain the apex.
+     */
+    private boolean circleInCone(double centerX, double centerY, double radius) {
+        double apexX = mViewPoint.x - mLookX * radius / mConeSin;
+        double apexY = mViewPoint.y - mLookY * radius / mConeSin;
+        double dx = centerX - apexX;
+        double dy = centerY - apexY;
+        double distSq = dx * dx + dy * dy;
+        double along = mLookX * dx + mLookY * dy;
+        if (along <= 0 || along * along < distSq * mConeCos * mConeCos) {
+            return false;
+        }
+
+        dx = centerX - mViewPoint.x;
+        dy = centerY - mViewPoint.y;
+        distSq = dx * dx + dy * dy;
+        along = -(mLookX * dx + mLookY * dy);
+        if (along > 0 && along * along >= distSq * mConeSin * mConeSin) {
+            return distSq <= radius * radius;
+        }
+        return true;
+    }
+
+    private boolean lineInsideViewpoint(Line line) {
+        return line.centerX == mViewPoint.x && line.centerY == mViewPoint.y;
+    }
+
+}
@@ -0,0 +1,195 @@
+package bsptree;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The pieces of lines waiting to be partitioned while a tree is built. A fragment is held as the number of the
+ * source segment it was cut from and the range of that segment it covers, from t0 to t1 with 0 being the segment's
+ * first end and 1 its second, so splitting a fragment creates no objects. A {@link Line} is only made for a fragment
+ * when it becomes a node, and a fragment that was never cut is given its source line itself.
+ *
+ * Buffers made from another buffer share its source segments, so fragments can be moved between them.
+ */
+public class FragmentBuffer {
+
+    private final SegmentBuffer mSegments;
+    // the line of each source segment, made when a fragment of it first becomes a node if not given up front, and
+    // shared by every buffer over the same segments, which may be on different threads in a lazily built tree
+    private final Line[] mLines;
+
+    private int[] mSources;
+    private double[] mStarts;
+    private double[] mEnds;
+    private int mSize;
+
+    /**
+     * Creates a buffer holding each line, uncut, in order. Fragments cut from a line share its origin.
+     */
+    FragmentBuffer(List<Line> lines) {
+        this(new SegmentBuffer(lines.size()), lines.toArray(new Line[0]));
+        for (Line line : mLines) {
+            mSegments.add(line.x1, line.y1, line.x2, line.y2);
+        }
+        addSources();
+    }
+
+    /**
+     * Creates a buffer holding each segment, uncut, in order.
+     */
+    FragmentBuffer(SegmentBuffer segments) {
+        this(segments, new Line[segments.size()]);
+        addSources();
+    }
+
+    /**
+     * Creates an empty buffer for fragments of the same source segments as another buffer.
+     */
+    FragmentBuffer(FragmentBuffer fragments) {
+        this(fragments.mSegments, fragments.mLines);
+    }
+
+    private FragmentBuffer(SegmentBuffer segments, Line[] lines) {
+        mSegments = segments;
+        mLines = lines;
+        mSources = new int[16];
+        mStarts = new double[16];
+        mEnds = new double[16];
+    }
+
+    private void addSources() {
+        for (int i = 0; i < mSegments.size(); i++) {
+            add(i, 0, 1);
+        }
+    }
+
+    /**
+     * @return the number of fragments
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of the source segment the fragment was cut from
+     */
+    public int source(int fragment) {
+        return mSources[fragment];
+    }
+
+    /**
+     * @return where the fragment starts along its source segment, 0 at the segment's first end
+     */
+    public double t0(int fragment) {
+        return mStarts[fragment];
+    }
+
+    /**
+     * @return where the fragment ends along its source segment, 1 at the segment's second end
+     */
+    public double t1(int fragment) {
+        return mEnds[fragment];
+    }
+
+    public double x1(int fragment) {
+        int source = mSources[fragment];
+        return along(mSegments.x1(source), mSegments.x2(source), mStarts[fragment]);
+    }
+
+    public double y1(int fragment) {
+        int source = mSources[fragment];
+        return along(mSegments.y1(source), mSegments.y2(source), mStarts[fragment]);
+    }
+
+    public double x2(int fragment) {
+        int source = mSources[fragment];
+        return along(mSegments.x1(source), mSegments.x2(source), mEnds[fragment]);
+    }
+
+    public double y2(int fragment) {
+        int source = mSources[fragment];
+        return along(mSegments.y1(source), mSegments.y2(source), mEnds[fragment]);
+    }
+
+    public double centerX(int fragment) {
+        return (x1(fragment) + x2(fragment)) / 2;
+    }
+
+    public double centerY(int fragment) {
+        return (y1(fragment) + y2(fragment)) / 2;
+    }
+
+    /**
+     * @return the coordinate t of the way from v1 to v2, exactly v1 at 0 and v2 at 1 so uncut ends are unchanged
+     */
+    private static double along(double v1, double v2, double t) {
+        return t == 1 ? v2 : v1 + (v2 - v1) * t;
+    }
+
+    /**
+     * @return the line of a fragment, the source line itself if the fragment is the whole of it, otherwise a piece
+     * of it with the same label and origin
+     */
+    Line line(int fragment) {
+        int source = mSources[fragment];
+        Line line = mLines[source];
+        if (line == null) {
+            // every piece of a segment must share one origin, and a line's fields are final so it is safe to read
+            // once seen
+            synchronized (mLines) {
+                line = mLines[source];
+                if (line == null) {
+                    line = new Line(mSegments.x1(source), mSegments.y1(source), mSegments.x2(source),
+                            mSegments.y2(source));
+                    mLines[source] = line;
+                }
+            }
+        }
+        if (mStarts[fragment] == 0 && mEnds[fragment] == 1) {
+            return line;
+        }
+        return line.subLine(line.label, x1(fragment), y1(fragment), x2(fragment), y2(fragment));
+    }
+
+    void add(int source, double t0, double t1) {
+        if (mSize == mSources.length) {
+            int capacity = mSize * 2;
+            mSources = Arrays.copyOf(mSources, capacity);
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mEnds = Arrays.copyOf(mEnds, capacity);
+        }
+        mSources[mSize] = source;
+        mStarts[mSize] = t0;
+        mEnds[mSize] = t1;
+        mSize++;
+    }
+
+    /**
+     * Appends fragments from..to of another buffer over the same source segments.
+     */
+    void addAll(FragmentBuffer fragments, int from, int to) {
+        int count = to - from;
+        if (mSize + count > mSources.length) {
+            int capacity = Math.max(mSize + count, mSize * 2);
+            mSources = Arrays.copyOf(mSources, capacity);
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mEnds = Arrays.copyOf(mEnds, capacity);
+        }
+        System.arraycopy(fragments.mSources, from, mSources, mSize, count);
+        System.arraycopy(fragments.mStarts, from, mStarts, mSize, count);
+        System.arraycopy(fragments.mEnds, from, mEnds, mSize, count);
+        mSize += count;
+    }
+
+    /**
+     * Discards the fragments from the given index to the end.
+     */
+    void truncate(int size) {
+        mSize = size;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+}
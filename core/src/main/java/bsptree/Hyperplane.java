@@ -0,0 +1,238 @@
+package bsptree;
+
+import java.awt.geom.Point2D;
+
+/**
+ * The infinite line through a line segment, in implicit form a*x + b*y + c = 0. The coefficients are normalised so
+ * that a*x + b*y + c is the signed distance of a point from the plane, positive on the side the segment's face points
+ * to.
+ *
+ * A Hyperplane is immutable, so planes can be shared between threads.
+ */
+public class Hyperplane {
+
+    public static final int FRONT = 0;
+    public static final int BACK = 1;
+    public static final int SPANNING = 2;
+    public static final int COINCIDENT = 3;
+
+    // the distance from the plane within which a point counts as being on it
+    public static final double DEFAULT_EPSILON = 0.0001;
+
+    public final double a;
+    public final double b;
+    public final double c;
+    public final double epsilon;
+
+    /**
+     * @deprecated the x intercept, or NaN for a horizontal plane, derived from {@link #a}, {@link #b} and
+     * {@link #c}; use those instead
+     */
+    @Deprecated
+    public final double x;
+    /**
+     * @deprecated the y intercept, or NaN for a vertical plane, derived from {@link #a}, {@link #b} and {@link #c};
+     * use those instead
+     */
+    @Deprecated
+    public final double y;
+    /**
+     * @deprecated the gradient, positive infinity for a vertical plane, derived from {@link #a} and {@link #b}; use
+     * those instead
+     */
+    @Deprecated
+    public final double slope;
+
+    public Hyperplane(Line line) {
+        this(line, DEFAULT_EPSILON);
+    }
+
+    public Hyperplane(Line line, double epsilon) {
+        this(line.x1, line.y1, line.x2, line.y2, epsilon);
+    }
+
+    /**
+     * The plane through the segment (x1,y1) -> (x2,y2), facing the same way as a {@link Line} between those points.
+     */
+    public Hyperplane(double x1, double y1, double x2, double y2, double epsilon) {
+        double faceX = y2 - y1;
+        double faceY = x1 - x2;
+        double length = Math.sqrt(faceX * faceX + faceY * faceY);
+        if (length == 0) {
+            // a line of no length has no direction, every point is simply on it
+            a = 0;
+            b = 0;
+            c = 0;
+        } else {
+            a = faceX / length;
+            b = faceY / length;
+            c = -(a * ((x1 + x2) / 2) + b * ((y1 + y2) / 2));
+        }
+        this.epsilon = epsilon;
+
+        if (a == 0 && b == 0) {
+            x = Double.NaN;
+            y = Double.NaN;
+            slope = Double.NaN;
+        } else {
+            x = a == 0 ? Double.NaN : -c / a;
+            y = b == 0 ? Double.NaN : -c / b;
+            slope = b == 0 ? Double.POSITIVE_INFINITY : a == 0 ? 0 : -a / b;
+        }
+    }
+
+    /**
+     * Finds the coefficients of the plane through a segment without creating a Hyperplane, for testing many planes
+     * against a scratch array. Gives the same coefficients as the constructor.
+     * @param plane receives a, b and c
+     */
+    static void coefficients(double x1, double y1, double x2, double y2, double[] plane) {
+        double faceX = y2 - y1;
+        double faceY = x1 - x2;
+        double length = Math.sqrt(faceX * faceX + faceY * faceY);
+        if (length == 0) {
+            // a line of no length has no direction, every point is simply on it
+            plane[0] = 0;
+            plane[1] = 0;
+            plane[2] = 0;
+        } else {
+            double a = faceX / length;
+            double b = faceY / length;
+            plane[0] = a;
+            plane[1] = b;
+            plane[2] = -(a * ((x1 + x2) / 2) + b * ((y1 + y2) / 2));
+        }
+    }
+
+    public boolean isVertical() {
+        return b == 0 && a != 0;
+    }
+
+    public boolean isHorizontal() {
+        return a == 0 && b != 0;
+    }
+
+    /**
+     * @return the signed distance of the point from this plane, positive in front and negative behind
+     */
+    public double distance(double x, double y) {
+        return a * x + b * y + c;
+    }
+
+    /**
+     * Classifies the segment (x1,y1) -> (x2,y2) against this plane. Ends within epsilon of the plane count as being
+     * on it, so a segment that only touches the plane is not split.
+     * @return FRONT or BACK if the segment is on one side of the plane, COINCIDENT if it lies along the plane, or
+     * SPANNING if the plane crosses it
+     */
+    public int classify(double x1, double y1, double x2, double y2) {
+        return classify(a, b, c, epsilon, x1, y1, x2, y2, null);
+    }
+
+    /**
+     * The same classification as {@link #classify(double, double, double, double)}, also giving where the plane
+     * crosses a spanning segment so it can be split without measuring its ends again.
+     * @param parameter receives t, how far from its first end to its second the plane crosses the segment, between 0
+     * and 1, only written if the segment is SPANNING
+     */
+    public int classify(double x1, double y1, double x2, double y2, double[] parameter) {
+        return classify(a, b, c, epsilon, x1, y1, x2, y2, parameter);
+    }
+
+    /**
+     * Classifies a segment against the plane with the given coefficients, see {@link #coefficients}.
+     * @param parameter receives t if the segment is SPANNING, or may be null
+     */
+    static int classify(double a, double b, double c, double epsilon, double x1, double y1, double x2, double y2,
+            double[] parameter) {
+        double distance1 = a * x1 + b * y1 + c;
+        double distance2 = a * x2 + b * y2 + c;
+
+        if (distance1 > epsilon) {
+            if (distance2 < -epsilon) {
+                if (parameter != null) {
+                    parameter[0] = distance1 / (distance1 - distance2);
+                }
+                return SPANNING;
+            }
+            return FRONT;
+        }
+        if (distance1 < -epsilon) {
+            if (distance2 > epsilon) {
+                if (parameter != null) {
+                    parameter[0] = distance1 / (distance1 - distance2);
+                }
+                return SPANNING;
+            }
+            return BACK;
+        }
+
+        // the first end is on the plane, so the second decides
+        if (distance2 > epsilon) {
+            return FRONT;
+        }
+        if (distance2 < -epsilon) {
+            return BACK;
+        }
+        return COINCIDENT;
+    }
+
+    public int classify(Line line) {
+        return classify(line.x1, line.y1, line.x2, line.y2);
+    }
+
+    public int classify(Line line, double[] parameter) {
+        return classify(line.x1, line.y1, line.x2, line.y2, parameter);
+    }
+
+    /**
+     * @return how far from its first end to its second the plane crosses the segment (x1,y1) -> (x2,y2), between 0
+     * and 1 for a segment classified as SPANNING
+     */
+    public double splitParameter(double x1, double y1, double x2, double y2) {
+        double distance1 = a * x1 + b * y1 + c;
+        double distance2 = a * x2 + b * y2 + c;
+        return distance1 / (distance1 - distance2);
+    }
+
+    /**
+     * Calculates the point of intersection between this plane and the given plane.
+     * @param plane another hyperplane.
+     * @return the 2D point of intersection, or null if the planes are parallel
+     */
+    public Point2D.Double intersects(Hyperplane plane) {
+        double det = a * plane.b - plane.a * b;
+        if (det == 0) {
+            return null;
+        }
+
+        return new Point2D.Double((b * plane.c - plane.b * c) / det, (plane.a * c - a * plane.c) / det);
+    }
+
+    /**
+     * Calculates the point of intersection between this plane and the given line segment.
+     * @param line a line segment to test against this plane
+     * @return the 2D point of intersection, or null if the line segment does not intersect this plane.
+     */
+    public Point2D.Double intersects(Line line) {
+        double[] parameter = new double[1];
+        switch (classify(line, parameter)) {
+            case SPANNING:
+                double t = parameter[0];
+                return new Point2D.Double(line.x1 + (line.x2 - line.x1) * t, line.y1 + (line.y2 - line.y1) * t);
+            case FRONT:
+            case BACK:
+                // the segment may still touch the plane at one end
+                if (Math.abs(distance(line.x1, line.y1)) <= epsilon) {
+                    return new Point2D.Double(line.x1, line.y1);
+                }
+                if (Math.abs(distance(line.x2, line.y2)) <= epsilon) {
+                    return new Point2D.Double(line.x2, line.y2);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+}
@@ -1,3 +1,5 @@
+package bsptree;
+
 import java.awt.geom.Point2D;
 
 public class Intersect {
@@ -39,6 +41,32 @@ public class Intersect {
      * @return The point of intersection, or null if the lines do not intersect.
      */
     public static Point2D.Double linesIntersect(double px, double py, double px2, double py2, double qx, double qy, double qx2, double qy2) {
+        // the same test as below, repeated so only the point is allocated
+        double rx = px2 - px;
+        double ry = py2 - py;
+        double sx = qx2 - qx;
+        double sy = qy2 - qy;
+        double rCrossS = cross(rx, ry, sx, sy);
+        if (rCrossS == 0.0) {
+            return null;
+        }
+        double t = cross(qx - px, qy - py, sx, sy) / rCrossS;
+        double u = cross(qx - px, qy - py, rx, ry) / rCrossS;
+        if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+            return new Point2D.Double(px + rx * t, py + ry * t);
+        }
+        return null;
+    }
+
+    /**
+     * The same test as {@link #linesIntersect(double, double, double, double, double, double, double, double)},
+     * giving where the lines cross rather than allocating the point.
+     * @param parameters receives t, how far along line 1 the lines cross, and u, how far along line 2, both between
+     * 0 and 1, only written if the lines intersect
+     * @return true if the lines intersect, false if they do not or are parallel
+     */
+    public static boolean linesIntersect(double px, double py, double px2, double py2, double qx, double qy, double qx2,
+            double qy2, double[] parameters) {
         // p - the start of the first line
         // q - the start of the second line
         // r - vector from p to the end of the first line
@@ -49,29 +77,24 @@ public class Intersect {
         double sy = qy2 - qy;
 
         // test that the lines are not parallel
-        if (cross(rx, ry, sx, sy) == 0.0) {
-            return null; // no intersection
+        double rCrossS = cross(rx, ry, sx, sy);
+        if (rCrossS == 0.0) {
+            return false; // no intersection
         }
 
-        // intermediate calculation for t...
-        double qMinusPCrossS = cross(qx-px, qy-py, sx, sy);
-        double rCrossS = cross(rx, ry, sx, sy);
         // t - coefficient of r that determins where on Line A a point lies
-        double t = qMinusPCrossS / rCrossS;
-
-        // intermediate calculation for u...
-        double qMinusPCrossR = cross(qx-px, qy-py, rx, ry);
+        double t = cross(qx - px, qy - py, sx, sy) / rCrossS;
         // u - coefficient of s that determins where on Line B a point lies
-        double u = qMinusPCrossR / rCrossS;
-
+        double u = cross(qx - px, qy - py, rx, ry) / rCrossS;
 
         // if:  0 <= t <= 1  AND  0 <= u <= 1  then the lines intersect
         // in this case t and u tell us the point of intersection
         if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
-            return new Point2D.Double(px + rx * t, py + ry * t);
-        } else {
-            return null;
+            parameters[0] = t;
+            parameters[1] = u;
+            return true;
         }
+        return false;
     }
 
     /**
@@ -1,3 +1,4 @@
+package bsptree;
 
 public class Light {
 
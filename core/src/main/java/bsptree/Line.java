@@ -0,0 +1,80 @@
+package bsptree;
+
+import java.awt.geom.Point2D;
+
+public class Line {
+    public final double x1, y1, x2, y2;
+    public final double centerX, centerY;
+    public final double slope;
+    public final Vec face;
+    public final String label;
+    // the whole line that this line was cut from, or this line if it has not been cut
+    public final Line origin;
+
+    public Line(String label, double x1, double y1, double x2, double y2) {
+        this(null, label, x1, y1, x2, y2);
+    }
+
+    private Line(Line origin, String label, double x1, double y1, double x2, double y2) {
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        slope = (y2 - y1) / (x2 - x1);
+        centerX = (x1 + x2) / 2;
+        centerY = (y1 + y2) / 2;
+        face = new Vec(y2 - y1, x1 - x2);
+        this.label = label;
+        this.origin = origin == null ? this : origin;
+    }
+
+    public Line(double x1, double y1, double x2, double y2) {
+        this("", x1, y1, x2, y2);
+    }
+
+    public Line(String label, Point2D p1, Point2D p2) {
+        this(label, p1.getX(), p1.getY(), p2.getX(), p2.getY());
+    }
+
+    public Line(Point2D p1, Point2D p2) {
+        this("", p1, p2);
+    }
+
+    /**
+     * Cuts a piece out of this line. The piece has the same origin as this line.
+     * @return a line from (x1, y1) to (x2, y2), which should lie along this line
+     */
+    public Line subLine(String label, double x1, double y1, double x2, double y2) {
+        return new Line(origin, label, x1, y1, x2, y2);
+    }
+
+    /**
+     * @param point A point to test
+     * @return true if the given point is in front of this line, otherwise false (point is behind this line)
+     */
+    public boolean pointInFront(Point2D.Double point) {
+        // only the sign matters, so there is no need to normalise the face or the offset
+        return face.x * (point.x - centerX) + face.y * (point.y - centerY) > 0;
+    }
+
+    /**
+     * @param plane the reference plane
+     * @return true if this line is in front of the reference plane, false if this line is behind the reference plane
+     */
+    public boolean inFrontOf(Line plane) {
+        return plane.face.x * (centerX - plane.centerX) + plane.face.y * (centerY - plane.centerY) > 0;
+    }
+
+    public Point2D.Double intersects(Line line) {
+        return Intersect.linesIntersect(x1, y1, x2, y2, line.x1, line.y1, line.x2, line.y2);
+    }
+
+    /**
+     * Tests whether the lines (px,py) -> (px2,py2) and (qx,qy) -> (qx2,qy2) intersect each other, see
+     * {@link Intersect#linesIntersect(double, double, double, double, double, double, double, double)}.
+     * @return The point of intersection, or null if the lines do not intersect.
+     */
+    public static Point2D.Double linesIntersect(double px, double py, double px2, double py2, double qx, double qy, double qx2, double qy2) {
+        return Intersect.linesIntersect(px, py, px2, py2, qx, qy, qx2, qy2);
+    }
+}
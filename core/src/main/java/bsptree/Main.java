@@ -1,3 +1,5 @@
+package bsptree;
+
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,7 +15,8 @@ public class Main {
     private static final int Y_LIMIT = 500;
 
     private List<Line> mLines;
-    private BSPTree mTree;
+    // replaced on the viewer's worker thread
+    private volatile BSPTree mTree;
     private Point2D.Double mViewPoint;
     private Random mRNG = new Random();
 
@@ -57,7 +60,7 @@ public class Main {
 
         System.out.println("Draw Order:");
         for (BSPTree.Node node : drawOrder) {
-            System.out.println(node.mLine.label);
+            System.out.println(node.getLine().label);
         }
     }
 
@@ -0,0 +1,55 @@
+package bsptree;
+
+
+/**
+ * The outcome of one search by a {@link BSPTreeOptimizer}: the best tree found, its score, and how much of the search
+ * was done before it stopped.
+ */
+public class OptimizerResult {
+
+    private final BSPTree mTree;
+    private final double mScore;
+    private final int mCandidate;
+    private final int mCandidatesBuilt;
+
+    OptimizerResult(BSPTree tree, double score, int candidate, int candidatesBuilt) {
+        mTree = tree;
+        mScore = score;
+        mCandidate = candidate;
+        mCandidatesBuilt = candidatesBuilt;
+    }
+
+    /**
+     * @return the tree with the lowest score, the lowest numbered of any with the same score
+     */
+    public BSPTree getTree() {
+        return mTree;
+    }
+
+    /**
+     * @return the tree's score, see {@link BSPTreeOptimizer#score(BSPStatistics)}
+     */
+    public double getScore() {
+        return mScore;
+    }
+
+    /**
+     * @return the number of the candidate the tree was, 0 being the scene as given
+     */
+    public int getCandidate() {
+        return mCandidate;
+    }
+
+    /**
+     * @return the number of candidates built before the search stopped
+     */
+    public int getCandidatesBuilt() {
+        return mCandidatesBuilt;
+    }
+
+    @Override
+    public String toString() {
+        return "OptimizerResult[score=" + mScore + ", candidate=" + mCandidate + ", candidatesBuilt="
+                + mCandidatesBuilt + "]";
+    }
+}
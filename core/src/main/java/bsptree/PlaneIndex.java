@@ -0,0 +1,240 @@
+package bsptree;
+
+
+/**
+ * The planes of a compiled tree's nodes that have children, indexed to find those separating two points without
+ * testing every plane, for updating a draw order as the viewpoint moves.
+ *
+ * A plane is indexed by the angle phi of its normal n and its offset d along it, so a point p is in front of the plane
+ * when p . n(phi) > d. The planes separating two points p and q are then those whose offsets lie between the curves
+ * p . n(phi) and q . n(phi). The planes are held in a kd-tree over (phi, d), and a box of it is passed over whole when
+ * both curves stay above it, or both below it, across the box's range of angles. For a small move the curves are
+ * close together, so only the boxes along them are opened.
+ *
+ * An index is immutable once built and can be shared between threads.
+ */
+class PlaneIndex {
+
+    // the most planes in a box that is not split
+    private static final int BUCKET = 8;
+
+    // box numbers are ints, so no box is more than 31 levels deep and a depth-first walk never holds more boxes
+    private static final int STACK = 64;
+
+    // the node numbers of the planes, with the angle and offset of each, in kd-tree order
+    private final int[] mNodes;
+    private final double[] mAngles;
+    private final double[] mOffsets;
+
+    // each box's range of planes and their bounds, numbered as a heap: the root box is 1 and the halves of box i are
+    // 2i and 2i + 1. The range of angles is held as the normals at either end of it, so a box can be tested without
+    // trigonometry, and whether it is wider than a half turn.
+    private final int[] mFroms;
+    private final int[] mTos;
+    private final double[] mMinNormalXs;
+    private final double[] mMinNormalYs;
+    private final double[] mMaxNormalXs;
+    private final double[] mMaxNormalYs;
+    private final boolean[] mWide;
+    private final double[] mMinOffsets;
+    private final double[] mMaxOffsets;
+
+    /**
+     * @param tree the tree whose planes to index, leaves and segments of no length are left out as no move can change
+     * their order
+     */
+    PlaneIndex(CompiledBSPTree tree) {
+        int count = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            if (!tree.isLeaf(node) && (tree.a(node) != 0 || tree.b(node) != 0)) {
+                count++;
+            }
+        }
+        mNodes = new int[count];
+        mAngles = new double[count];
+        mOffsets = new double[count];
+        int i = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            double a = tree.a(node);
+            double b = tree.b(node);
+            if (!tree.isLeaf(node) && (a != 0 || b != 0)) {
+                double length = Math.sqrt(a * a + b * b);
+                mNodes[i] = node;
+                mAngles[i] = Math.atan2(b, a);
+                mOffsets[i] = -tree.c(node) / length;
+                i++;
+            }
+        }
+
+        int leaves = 1;
+        while ((long) leaves * BUCKET < count) {
+            leaves *= 2;
+        }
+        mFroms = new int[2 * leaves];
+        mTos = new int[2 * leaves];
+        mMinNormalXs = new double[2 * leaves];
+        mMinNormalYs = new double[2 * leaves];
+        mMaxNormalXs = new double[2 * leaves];
+        mMaxNormalYs = new double[2 * leaves];
+        mWide = new boolean[2 * leaves];
+        mMinOffsets = new double[2 * leaves];
+        mMaxOffsets = new double[2 * leaves];
+        mTos[1] = count;
+        if (count > 0) {
+            build();
+        }
+    }
+
+    /**
+     * Splits the planes at the median of alternate axes, angle first, and records the bounds of every box.
+     */
+    private void build() {
+        int[] boxes = new int[STACK];
+        int top = 0;
+        boxes[top++] = 1;
+        while (top > 0) {
+            int box = boxes[--top];
+            int from = mFroms[box];
+            int to = mTos[box];
+
+            double minAngle = Double.POSITIVE_INFINITY;
+            double maxAngle = Double.NEGATIVE_INFINITY;
+            double minOffset = Double.POSITIVE_INFINITY;
+            double maxOffset = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                minAngle = Math.min(minAngle, mAngles[i]);
+                maxAngle = Math.max(maxAngle, mAngles[i]);
+                minOffset = Math.min(minOffset, mOffsets[i]);
+                maxOffset = Math.max(maxOffset, mOffsets[i]);
+            }
+            mMinNormalXs[box] = Math.cos(minAngle);
+            mMinNormalYs[box] = Math.sin(minAngle);
+            mMaxNormalXs[box] = Math.cos(maxAngle);
+            mMaxNormalYs[box] = Math.sin(maxAngle);
+            mWide[box] = maxAngle - minAngle > Math.PI;
+            mMinOffsets[box] = minOffset;
+            mMaxOffsets[box] = maxOffset;
+
+            if (to - from > BUCKET) {
+                int middle = (from + to) >>> 1;
+                select(from, to, middle, depth(box) % 2 == 0 ? mAngles : mOffsets);
+                mFroms[2 * box] = from;
+                mTos[2 * box] = middle;
+                mFroms[2 * box + 1] = middle;
+                mTos[2 * box + 1] = to;
+                boxes[top++] = 2 * box;
+                boxes[top++] = 2 * box + 1;
+            }
+        }
+    }
+
+    /**
+     * Finds the planes that may separate two points, which are every plane that does and a few near them.
+     * @param out receives the node numbers of the planes, in no particular order, it must hold every plane
+     * @return the number of node numbers written to out
+     */
+    int crossings(double x1, double y1, double x2, double y2, int[] out) {
+        int count = 0;
+        if (mNodes.length == 0) {
+            return 0;
+        }
+
+        double radius1 = Math.sqrt(x1 * x1 + y1 * y1);
+        double radius2 = Math.sqrt(x2 * x2 + y2 * y2);
+        int[] boxes = new int[STACK];
+        int top = 0;
+        boxes[top++] = 1;
+        while (top > 0) {
+            int box = boxes[--top];
+            // a margin for the rounding of the angles and offsets, which the caller's exact tests do not have
+            double margin = 1e-9 * (1 + radius1 + radius2 + Math.abs(mMinOffsets[box]) + Math.abs(mMaxOffsets[box]));
+            double low = mMinOffsets[box] - margin;
+            double high = mMaxOffsets[box] + margin;
+            boolean above = -most(box, -x1, -y1, radius1) > high && -most(box, -x2, -y2, radius2) > high;
+            boolean below = most(box, x1, y1, radius1) < low && most(box, x2, y2, radius2) < low;
+            if (above || below) {
+                continue;
+            }
+
+            int from = mFroms[box];
+            int to = mTos[box];
+            if (to - from > BUCKET) {
+                boxes[top++] = 2 * box + 1;
+                boxes[top++] = 2 * box;
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                out[count++] = mNodes[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the most of p . n over the normals n of a box's range of angles, a point p's side of planes through the
+     * origin at those angles
+     */
+    private double most(int box, double x, double y, double radius) {
+        double minNormalX = mMinNormalXs[box];
+        double minNormalY = mMinNormalYs[box];
+        double maxNormalX = mMaxNormalXs[box];
+        double maxNormalY = mMaxNormalYs[box];
+        // the most is the point's own length if its direction is among the normals, otherwise it is at an end
+        boolean afterMin = minNormalX * y - minNormalY * x >= 0;
+        boolean beforeMax = x * maxNormalY - y * maxNormalX >= 0;
+        if (mWide[box] ? afterMin || beforeMax : afterMin && beforeMax) {
+            return radius;
+        }
+        return Math.max(x * minNormalX + y * minNormalY, x * maxNormalX + y * maxNormalY);
+    }
+
+    private static int depth(int box) {
+        return 31 - Integer.numberOfLeadingZeros(box);
+    }
+
+    /**
+     * Reorders the planes from from to to so the one at k has the value it would have if they were sorted by the given
+     * values, with none after it less and none before it greater.
+     */
+    private void select(int from, int to, int k, double[] values) {
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int node = mNodes[i];
+        mNodes[i] = mNodes[j];
+        mNodes[j] = node;
+        double angle = mAngles[i];
+        mAngles[i] = mAngles[j];
+        mAngles[j] = angle;
+        double offset = mOffsets[i];
+        mOffsets[i] = mOffsets[j];
+        mOffsets[j] = offset;
+    }
+}
@@ -0,0 +1,474 @@
+package bsptree;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * The segments of a {@link CompiledBSPTree} that can be seen from each of its cells, precomputed so that drawing can
+ * skip the rest, see {@link DrawOrderVisitor#setPotentiallyVisibleSet}.
+ *
+ * Visibility flows from each cell through the portals between cells, as in Quake's vis, see {@link CellPortals}. A
+ * sight line leaving a cell passes a sequence of portals, so a cell further along is only reached if some line from
+ * the cell could pass every portal before it. Each portal reached is cut down to the part a line from the cell through
+ * the last portal passed could reach, and the flow stops where nothing is left. Where the flow reaches a portal again
+ * it only goes on if the part reached is not within the one it went on with before, and then with a part holding
+ * both, so the work from each cell is bounded by the number of portals rather than the number of sequences of them.
+ *
+ * The sets are conservative: every segment a sight line from anywhere in a cell hits first is in the cell's set.
+ * Such a line passes a sequence of portals that is never cut away, as portals are never cut closer than a small
+ * tolerance to where a line could pass, and it ends on a segment touching the last cell it reaches. The only lines
+ * left out are those through gaps between segments narrower than that tolerance. A set may hold segments that cannot
+ * be seen.
+ *
+ * The portals only reach a margin around the tree as wide as the tree itself, so a viewpoint further out looks into
+ * it through one of the cells reaching that margin. The sets of those cells are all joined, which keeps them
+ * conservative for viewpoints anywhere.
+ *
+ * Each cell's set is a bitset over node numbers stored run-length compressed, as in Quake's visibility data: each byte
+ * holds the bits of eight nodes, and a run of zero bytes is stored as a zero followed by the length of the run.
+ */
+public class PotentiallyVisibleSet {
+
+    // cells flowed from together on one thread, sharing their scratch space
+    private static final int CELL_CHUNK = 16;
+
+    private final int mSize;
+    private final int mCellCount;
+
+    // the compressed bitset of each cell, cell n's from mOffsets[n] up to mOffsets[n + 1]
+    private final int[] mOffsets;
+    private final byte[] mData;
+
+    public PotentiallyVisibleSet(CompiledBSPTree tree) {
+        this(tree, true);
+    }
+
+    /**
+     * @param tree the tree to find the visible segments of
+     * @param parallel true to flow from the cells on several threads
+     */
+    public PotentiallyVisibleSet(CompiledBSPTree tree, boolean parallel) {
+        mSize = tree.size();
+        mCellCount = tree.cellCount();
+
+        // the open cells' sets are kept whole to be joined once every cell is done
+        CellPortals portals = new CellPortals(tree);
+        byte[][] rows = new byte[mCellCount][];
+        long[][] open = new long[mCellCount][];
+        int chunks = (mCellCount + CELL_CHUNK - 1) / CELL_CHUNK;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        if (parallel) {
+            chunkStream = chunkStream.parallel();
+        }
+        chunkStream.forEach(chunk -> {
+            Flow flow = new Flow(portals, mSize);
+            int end = Math.min(mCellCount, (chunk + 1) * CELL_CHUNK);
+            for (int cell = chunk * CELL_CHUNK; cell < end; cell++) {
+                long[] visible = flow.visibleFrom(cell);
+                rows[cell] = compress(visible, mSize);
+                if (portals.isOpen(cell)) {
+                    open[cell] = visible;
+                }
+            }
+        });
+
+        long[] outside = new long[(mSize + 63) >>> 6];
+        for (int cell = 0; cell < mCellCount; cell++) {
+            if (open[cell] != null) {
+                or(outside, open[cell]);
+            }
+        }
+        for (int cell = 0; cell < mCellCount; cell++) {
+            if (open[cell] != null) {
+                or(open[cell], outside);
+                rows[cell] = compress(open[cell], mSize);
+            }
+        }
+
+        mOffsets = new int[mCellCount + 1];
+        for (int cell = 0; cell < mCellCount; cell++) {
+            mOffsets[cell + 1] = mOffsets[cell] + rows[cell].length;
+        }
+        mData = new byte[mOffsets[mCellCount]];
+        for (int cell = 0; cell < mCellCount; cell++) {
+            System.arraycopy(rows[cell], 0, mData, mOffsets[cell], rows[cell].length);
+        }
+    }
+
+    /**
+     * @return the number of nodes in the tree the set was computed for
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of cells in the tree the set was computed for
+     */
+    public int cellCount() {
+        return mCellCount;
+    }
+
+    /**
+     * @return the number of bytes the compressed sets of all cells take
+     */
+    public int compressedBytes() {
+        return mData.length;
+    }
+
+    /**
+     * @return true if the segment of the given node may be visible from somewhere in the given cell
+     */
+    public boolean isVisible(int cell, int node) {
+        int index = 0;
+        int target = node >>> 3;
+        for (int i = mOffsets[cell]; i < mOffsets[cell + 1]; i++) {
+            int bits = mData[i] & 0xff;
+            if (bits == 0) {
+                index += mData[++i] & 0xff;
+                if (index > target) {
+                    return false;
+                }
+            } else if (index++ == target) {
+                return (bits & (1 << (node & 7))) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the set of a cell.
+     * @param cell the cell the nodes are seen from
+     * @param visible receives a bit for each node, set if its segment may be visible, bit n of the node numbers being
+     * bit {@code n % 64} of {@code visible[n / 64]}, it must hold at least {@code (size() + 63) / 64} words
+     */
+    public void visibleNodes(int cell, long[] visible) {
+        int words = (mSize + 63) >>> 6;
+        if (visible.length < words) {
+            throw new IllegalArgumentException("visible must hold at least (size() + 63) / 64 words");
+        }
+        Arrays.fill(visible, 0, words, 0);
+        expand(mData, mOffsets[cell], mOffsets[cell + 1], visible);
+    }
+
+    private static void or(long[] bits, long[] other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other[i];
+        }
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * @return the bytes of the bitset with runs of zero bytes replaced by a zero and the length of the run
+     */
+    static byte[] compress(long[] bits, int size) {
+        int bytes = (size + 7) >>> 3;
+        byte[] compressed = new byte[bytes * 2];
+        int length = 0;
+        for (int i = 0; i < bytes; i++) {
+            int value = byteAt(bits, i);
+            if (value != 0) {
+                compressed[length++] = (byte) value;
+                continue;
+            }
+
+            int run = 1;
+            while (run < 255 && i + run < bytes && byteAt(bits, i + run) == 0) {
+                run++;
+            }
+            compressed[length++] = 0;
+            compressed[length++] = (byte) run;
+            i += run - 1;
+        }
+        return Arrays.copyOf(compressed, length);
+    }
+
+    /**
+     * Sets the bits of a bitset compressed by {@link #compress} from its bytes between from and to. Bits already set
+     * are left set.
+     */
+    static void expand(byte[] compressed, int from, int to, long[] bits) {
+        int index = 0;
+        for (int i = from; i < to; i++) {
+            int value = compressed[i] & 0xff;
+            if (value == 0) {
+                index += compressed[++i] & 0xff;
+            } else {
+                bits[index >>> 3] |= (long) value << ((index & 7) * 8);
+                index++;
+            }
+        }
+    }
+
+    private static int byteAt(long[] bits, int index) {
+        return (int) (bits[index >>> 3] >>> ((index & 7) * 8)) & 0xff;
+    }
+
+    /**
+     * The flow of sight lines from one cell at a time, with the scratch space for it. Portals and the parts of them
+     * reached are held as x1, y1, x2, y2.
+     */
+    private static class Flow {
+
+        // how many times the flow goes on from a portal with a larger part before going on with the whole portal
+        private static final int MAX_WIDENINGS = 2;
+
+        private final CellPortals mPortals;
+        private final int mSize;
+        private final double mTolerance;
+        private final boolean[] mSeen;
+        private int mUnseen;
+
+        // for each portal entered in each direction, numbered 2 * portal, plus 1 entering the cell behind it: the
+        // cell last flowed from that reached it, the part of it the flow went on with, and how many times that part
+        // has been widened
+        private final int[] mFlowedFrom;
+        private final double[] mParts;
+        private final int[] mWidenings;
+
+        // the corners of the cell flowed from
+        private double[] mCornerXs = new double[16];
+        private double[] mCornerYs = new double[16];
+        private int mCorners;
+
+        // the walk of sequences of portals, each step holding the cell reached, the next of its portals to try, the
+        // portal it was entered through and the part of that portal a line can pass
+        private int[] mCells = new int[16];
+        private int[] mNext = new int[16];
+        private int[] mEntries = new int[16];
+        private double[] mPasses = new double[16 * 4];
+        private final double[] mTarget = new double[4];
+
+        Flow(CellPortals portals, int size) {
+            mPortals = portals;
+            mSize = size;
+            mTolerance = portals.tolerance();
+            mSeen = new boolean[portals.cellCount()];
+            mFlowedFrom = new int[2 * portals.portalCount()];
+            Arrays.fill(mFlowedFrom, -1);
+            mParts = new double[8 * portals.portalCount()];
+            mWidenings = new int[2 * portals.portalCount()];
+        }
+
+        /**
+         * @return a bit for each node, set if its segment touches a cell visible from the given cell
+         */
+        long[] visibleFrom(int cell) {
+            Arrays.fill(mSeen, false);
+            mSeen[cell] = true;
+            ConvexPolygon polygon = mPortals.cell(cell);
+            if (polygon.corners() > mCornerXs.length) {
+                mCornerXs = new double[polygon.corners()];
+                mCornerYs = new double[polygon.corners()];
+            }
+            // clipping repeats corners that fall on a plane, which would hide which corners the cell turns at
+            mCorners = 0;
+            for (int i = 0; i < polygon.corners(); i++) {
+                double x = polygon.x(i);
+                double y = polygon.y(i);
+                if (mCorners == 0
+                        || Math.hypot(x - mCornerXs[mCorners - 1], y - mCornerYs[mCorners - 1]) > mTolerance) {
+                    mCornerXs[mCorners] = x;
+                    mCornerYs[mCorners] = y;
+                    mCorners++;
+                }
+            }
+            while (mCorners > 1
+                    && Math.hypot(mCornerXs[0] - mCornerXs[mCorners - 1], mCornerYs[0] - mCornerYs[mCorners - 1])
+                            <= mTolerance) {
+                mCorners--;
+            }
+            mUnseen = mPortals.connectedCells(cell) - 1;
+            if (mUnseen > 0) {
+                flow(cell);
+            }
+
+            long[] visible = new long[(mSize + 63) >>> 6];
+            for (int seen = 0; seen < mSeen.length; seen++) {
+                if (mSeen[seen]) {
+                    for (int i = mPortals.wallsFrom(seen); i < mPortals.wallsTo(seen); i++) {
+                        set(visible, mPortals.wall(i));
+                    }
+                }
+            }
+            return visible;
+        }
+
+        /**
+         * Follows the lines leaving a cell, depth first through the sequences of portals they could pass.
+         */
+        private void flow(int cell) {
+            int depth = 0;
+            mCells[0] = cell;
+            mNext[0] = mPortals.portalsFrom(cell);
+            mEntries[0] = -1;
+            while (depth >= 0) {
+                int from = mCells[depth];
+                if (mNext[depth] == mPortals.portalsTo(from)) {
+                    depth--;
+                    continue;
+                }
+                int portal = mPortals.portal(mNext[depth]++);
+                int to = mPortals.otherCell(portal, from);
+                // a straight line never passes back through a portal or into the convex cell it started in
+                if (portal == mEntries[depth] || to == cell) {
+                    continue;
+                }
+
+                // every part of the cell's own portals can be reached from it
+                mTarget[0] = mPortals.x1(portal);
+                mTarget[1] = mPortals.y1(portal);
+                mTarget[2] = mPortals.x2(portal);
+                mTarget[3] = mPortals.y2(portal);
+                if (depth > 0 && (!clip(mTarget, mPasses, depth * 4)
+                        || Math.hypot(mTarget[2] - mTarget[0], mTarget[3] - mTarget[1])
+                                <= CellPortals.MIN_PORTAL * mTolerance)) {
+                    continue;
+                }
+                if (!mSeen[to]) {
+                    mSeen[to] = true;
+                    // once every cell that can be reached is seen there is nothing left to find
+                    if (--mUnseen == 0) {
+                        return;
+                    }
+                }
+                if (!widen(2 * portal + (mPortals.frontCell(portal) == to ? 0 : 1), cell, portal)) {
+                    continue;
+                }
+
+                depth++;
+                if (depth == mCells.length) {
+                    mCells = Arrays.copyOf(mCells, depth * 2);
+                    mNext = Arrays.copyOf(mNext, depth * 2);
+                    mEntries = Arrays.copyOf(mEntries, depth * 2);
+                    mPasses = Arrays.copyOf(mPasses, depth * 8);
+                }
+                mCells[depth] = to;
+                mNext[depth] = mPortals.portalsFrom(to);
+                mEntries[depth] = portal;
+                System.arraycopy(mTarget, 0, mPasses, depth * 4, 4);
+            }
+        }
+
+        /**
+         * Decides whether the flow from a cell goes on through a portal with the part of it in mTarget. Where the flow
+         * went on through it before, the part is widened to hold the part it went on with then, or after too many
+         * widenings to the whole portal, as the lines through the wider part include every line through either.
+         * @param entry the portal and the direction it is entered in
+         * @return false if the part is within the one the flow went on with before, so it need not go on again
+         */
+        private boolean widen(int entry, int cell, int portal) {
+            int part = entry * 4;
+            if (mFlowedFrom[entry] == cell) {
+                double from = Math.min(along(mTarget[0], mTarget[1], portal), along(mTarget[2], mTarget[3], portal));
+                double to = Math.max(along(mTarget[0], mTarget[1], portal), along(mTarget[2], mTarget[3], portal));
+                double before = Math.min(along(mParts[part], mParts[part + 1], portal),
+                        along(mParts[part + 2], mParts[part + 3], portal));
+                double after = Math.max(along(mParts[part], mParts[part + 1], portal),
+                        along(mParts[part + 2], mParts[part + 3], portal));
+                if (from >= before - mTolerance && to <= after + mTolerance) {
+                    return false;
+                }
+                double x1 = mPortals.x1(portal);
+                double y1 = mPortals.y1(portal);
+                double x2 = mPortals.x2(portal);
+                double y2 = mPortals.y2(portal);
+                if (++mWidenings[entry] > MAX_WIDENINGS) {
+                    from = 0;
+                    to = 1;
+                } else {
+                    double length = Math.hypot(x2 - x1, y2 - y1);
+                    from = Math.min(from, before) / length;
+                    to = Math.max(to, after) / length;
+                }
+                mTarget[0] = x1 + (x2 - x1) * from;
+                mTarget[1] = y1 + (y2 - y1) * from;
+                mTarget[2] = x1 + (x2 - x1) * to;
+                mTarget[3] = y1 + (y2 - y1) * to;
+            } else {
+                mFlowedFrom[entry] = cell;
+                mWidenings[entry] = 0;
+            }
+            System.arraycopy(mTarget, 0, mParts, part, 4);
+            return true;
+        }
+
+        /**
+         * @return how far along a portal from its first end a point on it is
+         */
+        private double along(double x, double y, int portal) {
+            double x1 = mPortals.x1(portal);
+            double y1 = mPortals.y1(portal);
+            double dx = mPortals.x2(portal) - x1;
+            double dy = mPortals.y2(portal) - y1;
+            return ((x - x1) * dx + (y - y1) * dy) / Math.sqrt(dx * dx + dy * dy);
+        }
+
+        /**
+         * Cuts a portal down to the part a line from the cell through a pass portal could reach, by each line through
+         * an end of the pass portal and a corner of the cell that has the cell on one side and the pass portal on the
+         * other, as every line through both crosses to the pass portal's side of it. A line through a corner has the
+         * convex cell on one side when it has the corners either side of that one on the same side.
+         * @param segment the portal to cut, which receives the part left
+         * @param pass holds the pass portal at passIndex
+         * @return false if nothing is left
+         */
+        private boolean clip(double[] segment, double[] pass, int passIndex) {
+            for (int j = 0; j < 4; j += 2) {
+                double passX = pass[passIndex + j];
+                double passY = pass[passIndex + j + 1];
+                for (int i = 0; i < mCorners; i++) {
+                    // only the lines from the pass portal's end touching the cell at a corner have it on one side
+                    double cornerX = mCornerXs[i];
+                    double cornerY = mCornerYs[i];
+                    double edgeX = passX - cornerX;
+                    double edgeY = passY - cornerY;
+                    int previous = i == 0 ? mCorners - 1 : i - 1;
+                    int following = i == mCorners - 1 ? 0 : i + 1;
+                    double previousSide = edgeX * (mCornerYs[previous] - cornerY)
+                            - edgeY * (mCornerXs[previous] - cornerX);
+                    double followingSide = edgeX * (mCornerYs[following] - cornerY)
+                            - edgeY * (mCornerXs[following] - cornerX);
+                    double cellMin = Math.min(previousSide, followingSide);
+                    double cellMax = Math.max(previousSide, followingSide);
+                    if (cellMin < 0 && cellMax > 0) {
+                        continue;
+                    }
+                    double length = Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+                    if (length <= mTolerance) {
+                        continue;
+                    }
+                    double passSide = edgeX * (pass[passIndex + 3 - j] - cornerY)
+                            - edgeY * (pass[passIndex + 2 - j] - cornerX);
+                    double keep;
+                    if (cellMax <= 0 && passSide >= 0 && (cellMin < 0 || passSide > 0)) {
+                        keep = 1;
+                    } else if (cellMin >= 0 && passSide <= 0 && (cellMax > 0 || passSide < 0)) {
+                        keep = -1;
+                    } else {
+                        continue;
+                    }
+
+                    double side1 = keep * (edgeX * (segment[1] - cornerY) - edgeY * (segment[0] - cornerX)) / length;
+                    double side2 = keep * (edgeX * (segment[3] - cornerY) - edgeY * (segment[2] - cornerX)) / length;
+                    if (side1 < -mTolerance && side2 < -mTolerance) {
+                        return false;
+                    }
+                    if (side1 < -mTolerance || side2 < -mTolerance) {
+                        double t = (side1 + mTolerance) / (side1 - side2);
+                        double x = segment[0] + (segment[2] - segment[0]) * t;
+                        double y = segment[1] + (segment[3] - segment[1]) * t;
+                        int cut = side1 < -mTolerance ? 0 : 2;
+                        segment[cut] = x;
+                        segment[cut + 1] = y;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
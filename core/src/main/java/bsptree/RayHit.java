@@ -0,0 +1,50 @@
+package bsptree;
+
+import java.util.Arrays;
+
+
+/**
+ * The result of casting a ray through a {@link CompiledBSPTree}, or through the nodes of a {@link BSPTree}. A RayHit
+ * can be reused for any number of casts, which then allocate nothing once its stack has grown to fit the tree, but it
+ * must not be shared between threads.
+ */
+public class RayHit {
+    // the node number of the segment hit in a compiled tree, or -1 if the ray hit nothing
+    public int node = -1;
+    // the line of the node hit in a tree's nodes, or null if the ray hit nothing or was cast through a compiled tree
+    public Line line;
+    // distance along the ray to the hit
+    public double distance;
+    // the point hit
+    public double x, y;
+    // the number of nodes whose plane the ray was tested against
+    public int nodesVisited;
+
+    // the traversal stack, node numbers or complemented node numbers to test, and the range of the ray to test them
+    // over
+    int[] mNodes = new int[64];
+    double[] mNear = new double[64];
+    double[] mFar = new double[64];
+
+    public boolean isHit() {
+        return node >= 0 || line != null;
+    }
+
+    void clear() {
+        node = -1;
+        line = null;
+        distance = Double.NaN;
+        x = Double.NaN;
+        y = Double.NaN;
+        nodesVisited = 0;
+    }
+
+    void ensureStack(int size) {
+        if (size > mNodes.length) {
+            int capacity = Math.max(size, mNodes.length * 2);
+            mNodes = Arrays.copyOf(mNodes, capacity);
+            mNear = Arrays.copyOf(mNear, capacity);
+            mFar = Arrays.copyOf(mFar, capacity);
+        }
+    }
+}
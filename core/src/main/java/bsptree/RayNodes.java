@@ -0,0 +1,35 @@
+package bsptree;
+
+/**
+ * The nodes of a tree as a ray cast walks them, see {@link CompiledBSPTree#raycast(RayNodes, double, double, double,
+ * double, double, RayHit)}. Nodes are named by numbers, the root being {@link CompiledBSPTree#ROOT}, and each has a
+ * plane a*x + b*y + c, positive in front of it, and a segment along the plane.
+ */
+interface RayNodes {
+
+    double a(int node);
+
+    double b(int node);
+
+    double c(int node);
+
+    double x1(int node);
+
+    double y1(int node);
+
+    double x2(int node);
+
+    double y2(int node);
+
+    /**
+     * @return the number of the front child of the node, or a negative number if it has none, only asked for once a
+     * ray enters the child
+     */
+    int front(int node);
+
+    /**
+     * @return the number of the back child of the node, or a negative number if it has none, only asked for once a
+     * ray enters the child
+     */
+    int back(int node);
+}
@@ -0,0 +1,630 @@
+package bsptree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An area of the plane held as a BSP tree whose leaves are each solid or empty, for combining areas with union,
+ * intersection and difference.
+ *
+ * A region is made from a {@link BSPTree} of its boundary, with each line's face pointing out of the area: wherever the
+ * tree runs out in front of a line is outside, and wherever it runs out behind a line is inside. The boundary must be
+ * closed for that to describe an area.
+ *
+ * Regions are combined by merging their trees, after Naylor, Amanatides and Thibault: one tree is cut by each plane of
+ * the other in turn, within the cell of the plane's node. A subtree whose cell a plane does not cross goes to one side
+ * whole, and wherever either tree has reached a leaf the result is the other tree's subtree or its complement, so
+ * parts of the two regions that do not overlap are shared with the result rather than rebuilt. Regions are immutable,
+ * and their nodes can be shared between regions and threads.
+ *
+ * Cells are only followed within a box around both regions' boundaries, as wide again as the boundaries on every
+ * side, so combined regions are only exact within that box.
+ */
+public class Region {
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    private static final Node SOLID = new Node(null, null, null);
+    private static final Node EMPTY = new Node(null, null, null);
+
+    private final Node mRoot;
+    private final double mEpsilon;
+
+    // the bounds of the boundaries the region was made from
+    private final double mMinX;
+    private final double mMinY;
+    private final double mMaxX;
+    private final double mMaxY;
+
+    /**
+     * @param boundary the lines around the area, facing out of it
+     */
+    public Region(List<Line> boundary) {
+        this(new BSPTree(boundary));
+    }
+
+    /**
+     * @param tree a tree of the lines around the area, facing out of it
+     */
+    public Region(BSPTree tree) {
+        mEpsilon = tree.getEpsilon();
+        // convert a single snapshot of the tree, whatever edits are made to it meanwhile
+        BSPTree.Node root = tree.getRoot();
+
+        // convert the nodes children first, which is the reverse of the pre-order
+        List<BSPTree.Node> nodes = new ArrayList<>();
+        List<BSPTree.Node> pending = new ArrayList<>();
+        if (root != null) {
+            pending.add(root);
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        while (!pending.isEmpty()) {
+            BSPTree.Node node = pending.remove(pending.size() - 1);
+            nodes.add(node);
+            Line line = node.getLine();
+            minX = Math.min(minX, Math.min(line.x1, line.x2));
+            minY = Math.min(minY, Math.min(line.y1, line.y2));
+            maxX = Math.max(maxX, Math.max(line.x1, line.x2));
+            maxY = Math.max(maxY, Math.max(line.y1, line.y2));
+            if (node.getBackNode() != null) {
+                pending.add(node.getBackNode());
+            }
+            if (node.getFrontNode() != null) {
+                pending.add(node.getFrontNode());
+            }
+        }
+
+        Map<BSPTree.Node, Node> converted = new IdentityHashMap<>();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            BSPTree.Node node = nodes.get(i);
+            Node front = node.getFrontNode() == null ? EMPTY : converted.get(node.getFrontNode());
+            Node back = node.getBackNode() == null ? SOLID : converted.get(node.getBackNode());
+            Hyperplane plane = new Hyperplane(node.getLine(), mEpsilon);
+            // a line of no length puts every point behind it
+            converted.put(node, plane.a == 0 && plane.b == 0 ? back : new Node(plane, front, back));
+        }
+        mRoot = root == null ? EMPTY : converted.get(root);
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
+    }
+
+    private Region(Node root, double epsilon, double minX, double minY, double maxX, double maxY) {
+        mRoot = root;
+        mEpsilon = epsilon;
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
+    }
+
+    /**
+     * @return the area inside either region
+     */
+    public Region union(Region other) {
+        return combine(other, UNION);
+    }
+
+    /**
+     * @return the area inside both regions
+     */
+    public Region intersection(Region other) {
+        return combine(other, INTERSECTION);
+    }
+
+    /**
+     * @return the area inside this region and outside the other
+     */
+    public Region difference(Region other) {
+        return combine(other, DIFFERENCE);
+    }
+
+    /**
+     * @return the area outside this region
+     */
+    public Region complement() {
+        return new Region(complement(mRoot), mEpsilon, mMinX, mMinY, mMaxX, mMaxY);
+    }
+
+    /**
+     * @return true if the point is inside the region, points on a boundary count as behind it as they do in a tree
+     */
+    public boolean contains(double x, double y) {
+        Node node = mRoot;
+        while (!node.isLeaf()) {
+            node = node.mPlane.distance(x, y) > 0 ? node.mFront : node.mBack;
+        }
+        return node == SOLID;
+    }
+
+    /**
+     * @return the number of planes in the region's tree
+     */
+    public int size() {
+        int size = 0;
+        List<Node> pending = new ArrayList<>();
+        pending.add(mRoot);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (!node.isLeaf()) {
+                size++;
+                pending.add(node.mFront);
+                pending.add(node.mBack);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds the boundary of the region by cutting the plane of every node to its cell, then keeping the parts of it
+     * with inside on one side and outside on the other.
+     * @return the lines around the region, facing out of it
+     */
+    public List<Line> boundary() {
+        List<Line> lines = new ArrayList<>();
+        Intervals front = new Intervals();
+        Intervals back = new Intervals();
+        List<Node> nodes = new ArrayList<>();
+        List<ConvexPolygon> cells = new ArrayList<>();
+        nodes.add(mRoot);
+        cells.add(universe(this));
+        while (!nodes.isEmpty()) {
+            Node node = nodes.remove(nodes.size() - 1);
+            ConvexPolygon cell = cells.remove(cells.size() - 1);
+            if (node.isLeaf()) {
+                continue;
+            }
+
+            Hyperplane plane = node.mPlane;
+            double t0 = Double.POSITIVE_INFINITY;
+            double t1 = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < cell.corners(); i++) {
+                int j = (i + 1) % cell.corners();
+                double di = plane.distance(cell.x(i), cell.y(i));
+                double dj = plane.distance(cell.x(j), cell.y(j));
+                if ((di > 0) != (dj > 0)) {
+                    double s = di / (di - dj);
+                    double t = parameter(plane, cell.x(i) + (cell.x(j) - cell.x(i)) * s,
+                            cell.y(i) + (cell.y(j) - cell.y(i)) * s);
+                    t0 = Math.min(t0, t);
+                    t1 = Math.max(t1, t);
+                }
+            }
+            if (t1 - t0 > mEpsilon) {
+                front.classify(node.mFront, plane, t0, t1, true, mEpsilon);
+                back.classify(node.mBack, plane, t0, t1, false, mEpsilon);
+                addBoundary(plane, front, back, lines);
+            }
+
+            ConvexPolygon frontCell = new ConvexPolygon(cell);
+            frontCell.clip(plane.a, plane.b, plane.c, true);
+            cell.clip(plane.a, plane.b, plane.c, false);
+            nodes.add(node.mBack);
+            cells.add(cell);
+            nodes.add(node.mFront);
+            cells.add(frontCell);
+        }
+        return lines;
+    }
+
+    /**
+     * @return a tree of the region's boundary
+     */
+    public BSPTree toBSPTree() {
+        return new BSPTree(boundary());
+    }
+
+    /**
+     * Adds the parts of a plane's segment with inside on one side and outside on the other, given what is in front of
+     * and behind each part of it.
+     */
+    private void addBoundary(Hyperplane plane, Intervals front, Intervals back, List<Line> lines) {
+        front.sort();
+        back.sort();
+
+        // the piece being extended, facing along the plane's normal if outward is set
+        double start = 0;
+        double end = 0;
+        boolean outward = false;
+        boolean open = false;
+
+        int i = 0;
+        int j = 0;
+        while (i < front.mSize && j < back.mSize) {
+            double s0 = Math.max(front.mStarts[i], back.mStarts[j]);
+            double s1 = Math.min(front.mEnds[i], back.mEnds[j]);
+            boolean frontSolid = front.mSolids[i];
+            boolean backSolid = back.mSolids[j];
+            if (front.mEnds[i] < back.mEnds[j]) {
+                i++;
+            } else {
+                j++;
+            }
+            if (s1 - s0 <= mEpsilon || frontSolid == backSolid) {
+                continue;
+            }
+
+            if (open && outward == backSolid && s0 - end <= mEpsilon) {
+                end = s1;
+                continue;
+            }
+            if (open) {
+                lines.add(line(plane, start, end, outward));
+            }
+            start = s0;
+            end = s1;
+            outward = backSolid;
+            open = true;
+        }
+        if (open) {
+            lines.add(line(plane, start, end, outward));
+        }
+    }
+
+    /**
+     * @return the part of a plane from t0 to t1, facing along the plane's normal if outward is true
+     */
+    private static Line line(Hyperplane plane, double t0, double t1, boolean outward) {
+        if (!outward) {
+            double swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        return new Line(pointX(plane, t0), pointY(plane, t0), pointX(plane, t1), pointY(plane, t1));
+    }
+
+    // points along a plane are the point nearest the origin plus t times the direction (-b, a), a line in that
+    // direction faces along the plane's normal
+
+    private static double pointX(Hyperplane plane, double t) {
+        return -plane.a * plane.c - plane.b * t;
+    }
+
+    private static double pointY(Hyperplane plane, double t) {
+        return -plane.b * plane.c + plane.a * t;
+    }
+
+    private static double parameter(Hyperplane plane, double x, double y) {
+        return -plane.b * x + plane.a * y;
+    }
+
+    private Region combine(Region other, int operation) {
+        Region bounds = new Region(null, Math.max(mEpsilon, other.mEpsilon), Math.min(mMinX, other.mMinX),
+                Math.min(mMinY, other.mMinY), Math.max(mMaxX, other.mMaxX), Math.max(mMaxY, other.mMaxY));
+        Node root = merge(mRoot, other.mRoot, universe(bounds), operation, bounds.mEpsilon);
+        return new Region(root, bounds.mEpsilon, bounds.mMinX, bounds.mMinY, bounds.mMaxX, bounds.mMaxY);
+    }
+
+    /**
+     * @return a box around the region's boundary with a margin as wide as the boundary
+     */
+    private static ConvexPolygon universe(Region region) {
+        if (region.mMinX > region.mMaxX) {
+            return new ConvexPolygon(-1, -1, 1, 1);
+        }
+        double margin = Math.max(1, Math.max(region.mMaxX - region.mMinX, region.mMaxY - region.mMinY));
+        return new ConvexPolygon(region.mMinX - margin, region.mMinY - margin, region.mMaxX + margin,
+                region.mMaxY + margin);
+    }
+
+    /**
+     * Combines two subtrees within a cell. Trees may be far deeper than the call stack, so the merge keeps its own
+     * stacks: one of pending merges and one of the results of those finished.
+     */
+    private static Node merge(Node a, Node b, ConvexPolygon cell, int operation, double epsilon) {
+        // each pending merge is of a node of each tree within a cell, or, where the cell is null, the joining of the
+        // last two results under the first node's plane
+        List<Node> as = new ArrayList<>();
+        List<Node> bs = new ArrayList<>();
+        List<ConvexPolygon> cells = new ArrayList<>();
+        List<Node> results = new ArrayList<>();
+        as.add(a);
+        bs.add(b);
+        cells.add(cell);
+        while (!as.isEmpty()) {
+            int last = as.size() - 1;
+            a = as.remove(last);
+            b = bs.remove(last);
+            cell = cells.remove(last);
+            if (cell == null) {
+                Node back = results.remove(results.size() - 1);
+                Node front = results.remove(results.size() - 1);
+                results.add(join(a, front, back));
+                continue;
+            }
+
+            // a plane that misses the cell leaves only its child on the cell's side
+            while (!a.isLeaf() && !b.isLeaf()) {
+                Hyperplane plane = a.mPlane;
+                int side = cell.classify(plane.a, plane.b, plane.c, epsilon);
+                if (side == Hyperplane.FRONT) {
+                    a = a.mFront;
+                } else if (side == Hyperplane.BACK) {
+                    a = a.mBack;
+                } else {
+                    break;
+                }
+            }
+            if (a.isLeaf() || b.isLeaf()) {
+                results.add(combine(a, b, operation));
+                continue;
+            }
+
+            Hyperplane plane = a.mPlane;
+            Node[] parts = partition(b, cell, plane, epsilon);
+            ConvexPolygon frontCell = new ConvexPolygon(cell);
+            frontCell.clip(plane.a, plane.b, plane.c, true);
+            ConvexPolygon backCell = new ConvexPolygon(cell);
+            backCell.clip(plane.a, plane.b, plane.c, false);
+
+            // the join is pushed first so it is taken once both sides are merged, the front merged before the back
+            as.add(a);
+            bs.add(null);
+            cells.add(null);
+            as.add(a.mBack);
+            bs.add(parts[1] != null ? parts[1] : b);
+            cells.add(backCell);
+            as.add(a.mFront);
+            bs.add(parts[0] != null ? parts[0] : b);
+            cells.add(frontCell);
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Combines two subtrees where at least one is a leaf.
+     */
+    private static Node combine(Node a, Node b, int operation) {
+        switch (operation) {
+            case UNION:
+                if (a == SOLID || b == SOLID) {
+                    return SOLID;
+                }
+                return a == EMPTY ? b : a;
+            case INTERSECTION:
+                if (a == EMPTY || b == EMPTY) {
+                    return EMPTY;
+                }
+                return a == SOLID ? b : a;
+            default:
+                if (a == EMPTY || b == SOLID) {
+                    return EMPTY;
+                }
+                return b == EMPTY ? a : complement(b);
+        }
+    }
+
+    private static Node complement(Node root) {
+        // complement the nodes children first, which is the reverse of the pre-order
+        List<Node> nodes = new ArrayList<>();
+        List<Node> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (!node.isLeaf()) {
+                nodes.add(node);
+                pending.add(node.mBack);
+                pending.add(node.mFront);
+            }
+        }
+
+        Map<Node, Node> complements = new IdentityHashMap<>();
+        complements.put(SOLID, EMPTY);
+        complements.put(EMPTY, SOLID);
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            complements.put(node, new Node(node.mPlane, complements.get(node.mFront), complements.get(node.mBack)));
+        }
+        return complements.get(root);
+    }
+
+    /**
+     * Splits the part of a subtree within a cell by a plane, keeping its own stacks as {@link #merge} does.
+     * @return the subtree in front of the plane and the subtree behind it, either being null if none of the cell is
+     * on that side
+     */
+    private static Node[] partition(Node node, ConvexPolygon cell, Hyperplane plane, double epsilon) {
+        // each pending split is of a node within a cell, or, where the cell is null, the joining of the last two
+        // results under the node's plane
+        List<Node> nodes = new ArrayList<>();
+        List<ConvexPolygon> cells = new ArrayList<>();
+        List<Node> fronts = new ArrayList<>();
+        List<Node> backs = new ArrayList<>();
+        nodes.add(node);
+        cells.add(cell);
+        while (!nodes.isEmpty()) {
+            int last = nodes.size() - 1;
+            node = nodes.remove(last);
+            cell = cells.remove(last);
+            if (cell == null) {
+                int back = fronts.size() - 1;
+                Node front0 = fronts.get(back - 1);
+                Node back0 = backs.get(back - 1);
+                Node front1 = fronts.remove(back);
+                Node back1 = backs.remove(back);
+                fronts.set(back - 1, join(node, front0, front1));
+                backs.set(back - 1, join(node, back0, back1));
+                continue;
+            }
+
+            int side = cell.classify(plane.a, plane.b, plane.c, epsilon);
+            if (side == Hyperplane.FRONT || side == Hyperplane.BACK) {
+                fronts.add(side == Hyperplane.FRONT ? node : null);
+                backs.add(side == Hyperplane.BACK ? node : null);
+                continue;
+            }
+
+            // a node whose plane misses the cell is only its child on the cell's side
+            while (!node.isLeaf()) {
+                Hyperplane own = node.mPlane;
+                side = cell.classify(own.a, own.b, own.c, epsilon);
+                if (side == Hyperplane.FRONT) {
+                    node = node.mFront;
+                } else if (side == Hyperplane.BACK) {
+                    node = node.mBack;
+                } else {
+                    break;
+                }
+            }
+            if (node.isLeaf()) {
+                fronts.add(node);
+                backs.add(node);
+                continue;
+            }
+
+            Hyperplane own = node.mPlane;
+            ConvexPolygon frontCell = new ConvexPolygon(cell);
+            frontCell.clip(own.a, own.b, own.c, true);
+            ConvexPolygon backCell = new ConvexPolygon(cell);
+            backCell.clip(own.a, own.b, own.c, false);
+            nodes.add(node);
+            cells.add(null);
+            nodes.add(node.mBack);
+            cells.add(backCell);
+            nodes.add(node.mFront);
+            cells.add(frontCell);
+        }
+        return new Node[] { fronts.get(0), backs.get(0) };
+    }
+
+    /**
+     * @return a node with the plane of the given node and the given children, the node itself if they are its own
+     * children, or the only child that is not null or both children are the same leaf
+     */
+    private static Node join(Node node, Node front, Node back) {
+        if (front == null) {
+            return back;
+        }
+        if (back == null) {
+            return front;
+        }
+        if (front == node.mFront && back == node.mBack) {
+            return node;
+        }
+        if (front == back && front.isLeaf()) {
+            return front;
+        }
+        return new Node(node.mPlane, front, back);
+    }
+
+    private static class Node {
+        final Hyperplane mPlane;
+        final Node mFront;
+        final Node mBack;
+
+        Node(Hyperplane plane, Node front, Node back) {
+            mPlane = plane;
+            mFront = front;
+            mBack = back;
+        }
+
+        boolean isLeaf() {
+            return mPlane == null;
+        }
+    }
+
+    /**
+     * The parts of a plane's segment, as ranges along the plane, and whether each is in a solid or an empty leaf of
+     * one side of the segment's node.
+     */
+    private static class Intervals {
+        double[] mStarts = new double[16];
+        double[] mEnds = new double[16];
+        boolean[] mSolids = new boolean[16];
+        int mSize;
+
+        // the ranges waiting to be pushed further down the tree
+        private final List<Node> mNodes = new ArrayList<>();
+        private double[] mPendingStarts = new double[16];
+        private double[] mPendingEnds = new double[16];
+
+        /**
+         * Pushes the segment from t0 to t1 along a plane down a subtree on one side of it, splitting it at the planes
+         * it crosses, to find the leaves just to that side of each part of it.
+         * @param frontSide true to find the leaves in front of the segment, false for those behind it
+         */
+        void classify(Node subtree, Hyperplane plane, double t0, double t1, boolean frontSide, double epsilon) {
+            mSize = 0;
+            mNodes.clear();
+            push(subtree, t0, t1);
+            while (!mNodes.isEmpty()) {
+                int i = mNodes.size() - 1;
+                Node node = mNodes.remove(i);
+                double start = mPendingStarts[i];
+                double end = mPendingEnds[i];
+                if (node.isLeaf()) {
+                    add(start, end, node == SOLID);
+                    continue;
+                }
+
+                Hyperplane other = node.mPlane;
+                double d0 = other.distance(pointX(plane, start), pointY(plane, start));
+                double d1 = other.distance(pointX(plane, end), pointY(plane, end));
+                if ((d0 > epsilon && d1 < -epsilon) || (d0 < -epsilon && d1 > epsilon)) {
+                    double split = start + (end - start) * d0 / (d0 - d1);
+                    push(d0 > 0 ? node.mFront : node.mBack, start, split);
+                    push(d0 > 0 ? node.mBack : node.mFront, split, end);
+                } else if (d0 > epsilon || d1 > epsilon) {
+                    push(node.mFront, start, end);
+                } else if (d0 < -epsilon || d1 < -epsilon) {
+                    push(node.mBack, start, end);
+                } else {
+                    // along the other plane, the side just off the segment is in front of it if they face the same way
+                    boolean sameFacing = other.a * plane.a + other.b * plane.b > 0;
+                    push(frontSide == sameFacing ? node.mFront : node.mBack, start, end);
+                }
+            }
+        }
+
+        private void push(Node node, double start, double end) {
+            int i = mNodes.size();
+            if (i == mPendingStarts.length) {
+                mPendingStarts = Arrays.copyOf(mPendingStarts, i * 2);
+                mPendingEnds = Arrays.copyOf(mPendingEnds, i * 2);
+            }
+            mNodes.add(node);
+            mPendingStarts[i] = start;
+            mPendingEnds[i] = end;
+        }
+
+        private void add(double start, double end, boolean solid) {
+            if (mSize == mStarts.length) {
+                mStarts = Arrays.copyOf(mStarts, mSize * 2);
+                mEnds = Arrays.copyOf(mEnds, mSize * 2);
+                mSolids = Arrays.copyOf(mSolids, mSize * 2);
+            }
+            mStarts[mSize] = start;
+            mEnds[mSize] = end;
+            mSolids[mSize] = solid;
+            mSize++;
+        }
+
+        /**
+         * Sorts the ranges along the plane, they do not overlap so sorting by start is enough.
+         */
+        void sort() {
+            for (int i = 1; i < mSize; i++) {
+                double start = mStarts[i];
+                double end = mEnds[i];
+                boolean solid = mSolids[i];
+                int j = i;
+                for (; j > 0 && mStarts[j - 1] > start; j--) {
+                    mStarts[j] = mStarts[j - 1];
+                    mEnds[j] = mEnds[j - 1];
+                    mSolids[j] = mSolids[j - 1];
+                }
+                mStarts[j] = start;
+                mEnds[j] = end;
+                mSolids[j] = solid;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bsptree;
+
+
+/**
+ * Chooses a splitter by estimating the cost of partitioning with a handful of candidate lines. The cost of a candidate
+ * weighs the number of lines it would split against how unevenly it divides the remaining lines between its front
+ * and back.
+ *
+ * Candidates and the lines they are tested against are sampled at even strides through the range, so large ranges
+ * cost a bounded amount of work and the same input always gives the same choice.
+ */
+public class SampledCostSelector implements BSPTree.SplitterSelector {
+
+    public static final int DEFAULT_CANDIDATES = 16;
+    public static final int DEFAULT_TESTS = 64;
+    public static final double DEFAULT_SPLIT_WEIGHT = 2;
+    public static final double DEFAULT_BALANCE_WEIGHT = 1;
+
+    private final int mCandidates;
+    private final int mTests;
+    private final double mSplitWeight;
+    private final double mBalanceWeight;
+
+    /**
+     * @param candidates the maximum number of lines considered as the splitter
+     * @param tests the maximum number of lines each candidate is tested against
+     * @param splitWeight cost of each line the candidate would split
+     * @param balanceWeight cost of each line of difference between the front and back of the candidate
+     */
+    public SampledCostSelector(int candidates, int tests, double splitWeight, double balanceWeight) {
+        if (candidates < 1 || tests < 1) {
+            throw new IllegalArgumentException("candidates and tests must be >= 1");
+        }
+        mCandidates = candidates;
+        mTests = tests;
+        mSplitWeight = splitWeight;
+        mBalanceWeight = balanceWeight;
+    }
+
+    public SampledCostSelector(int candidates, int tests) {
+        this(candidates, tests, DEFAULT_SPLIT_WEIGHT, DEFAULT_BALANCE_WEIGHT);
+    }
+
+    public SampledCostSelector() {
+        this(DEFAULT_CANDIDATES, DEFAULT_TESTS);
+    }
+
+    @Override
+    public int select(FragmentBuffer fragments, int from, int to, double epsilon) {
+        int size = to - from;
+        if (size <= 2) {
+            // with one or two lines every choice gives the same tree shape
+            return from;
+        }
+
+        int candidates = Math.min(mCandidates, size);
+        int tests = Math.min(mTests, size);
+        double candidateStride = size / (double) candidates;
+        double testStride = size / (double) tests;
+
+        // a, b and c of each candidate's plane in turn
+        double[] plane = new double[3];
+        int bestLine = from;
+        double bestCost = Double.MAX_VALUE;
+        for (int c = 0; c < candidates; c++) {
+            int candidate = from + (int) (c * candidateStride);
+            Hyperplane.coefficients(fragments.x1(candidate), fragments.y1(candidate), fragments.x2(candidate),
+                    fragments.y2(candidate), plane);
+
+            int front = 0, back = 0, split = 0;
+            for (int t = 0; t < tests; t++) {
+                int test = from + (int) (t * testStride);
+                if (test == candidate) {
+                    continue;
+                }
+
+                switch (Hyperplane.classify(plane[0], plane[1], plane[2], epsilon, fragments.x1(test),
+                        fragments.y1(test), fragments.x2(test), fragments.y2(test), null)) {
+                    case Hyperplane.SPANNING:
+                        split++;
+                        break;
+                    case Hyperplane.FRONT:
+                        front++;
+                        break;
+                    default:
+                        back++;
+                        break;
+                }
+            }
+
+            double cost = mSplitWeight * split + mBalanceWeight * Math.abs(front - back);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestLine = candidate;
+            }
+        }
+
+        return bestLine;
+    }
+}
@@ -0,0 +1,352 @@
+package bsptree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A growable list of line segments held as the coordinates of their end points in a single array, with no object per
+ * segment. Segments can be streamed into a buffer from a binary or CSV file, and a {@link BSPTree} can be built from a
+ * buffer directly.
+ */
+public class SegmentBuffer {
+
+    // file format: the magic number, version and segment count, then x1, y1, x2, y2 of each segment, all little-endian
+    private static final int FILE_MAGIC = 0x42535053;
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 12;
+
+    // files are read and written through a buffer of this many bytes, a multiple of the size of a segment
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    // largest power of ten, and largest mantissa, that a double holds exactly
+    private static final int MAX_EXACT_POWER = 22;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // x1, y1, x2, y2 of each segment in turn
+    private double[] mCoordinates;
+    private int mSize;
+
+    public SegmentBuffer() {
+        this(16);
+    }
+
+    /**
+     * @param capacity the number of segments to make room for
+     */
+    public SegmentBuffer(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must be >= 0");
+        }
+        mCoordinates = new double[capacity * 4];
+    }
+
+    public void add(double x1, double y1, double x2, double y2) {
+        ensureCapacity(mSize + 1);
+        int i = mSize * 4;
+        mCoordinates[i] = x1;
+        mCoordinates[i + 1] = y1;
+        mCoordinates[i + 2] = x2;
+        mCoordinates[i + 3] = y2;
+        mSize++;
+    }
+
+    private void ensureCapacity(int segments) {
+        if (segments * 4L > mCoordinates.length) {
+            long capacity = Math.max(segments, mCoordinates.length / 4 + (mCoordinates.length / 8)) * 4L;
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many segments for one buffer");
+            }
+            mCoordinates = Arrays.copyOf(mCoordinates, (int) capacity);
+        }
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public double x1(int segment) {
+        return mCoordinates[segment * 4];
+    }
+
+    public double y1(int segment) {
+        return mCoordinates[segment * 4 + 1];
+    }
+
+    public double x2(int segment) {
+        return mCoordinates[segment * 4 + 2];
+    }
+
+    public double y2(int segment) {
+        return mCoordinates[segment * 4 + 3];
+    }
+
+    /**
+     * @return a new unlabelled line for the given segment
+     */
+    public Line line(int segment) {
+        return new Line(x1(segment), y1(segment), x2(segment), y2(segment));
+    }
+
+    /**
+     * @return a new unlabelled line for each segment, in order
+     */
+    public List<Line> lines() {
+        List<Line> lines = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            lines.add(line(i));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the segments to a file in a compact binary form that {@link #load(Path)} can read straight back.
+     * @param path the file to write, replacing any existing file
+     */
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(FILE_MAGIC);
+            buffer.putInt(FILE_VERSION);
+            buffer.putInt(mSize);
+
+            int coordinates = mSize * 4;
+            int written = 0;
+            while (written < coordinates) {
+                int count = Math.min(coordinates - written, buffer.remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(mCoordinates, written, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                written += count;
+                writeFully(channel, buffer);
+            }
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads segments written by {@link #write(Path)}, streaming them from the file a block at a time straight into
+     * the buffer's array.
+     * @param path the file to read
+     * @return the segments
+     * @throws IOException if the file cannot be read or is not a segment file of a supported version
+     */
+    public static SegmentBuffer load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(FILE_HEADER_BYTES);
+            readFully(channel, buffer);
+            buffer.flip();
+            if (buffer.remaining() < FILE_HEADER_BYTES || buffer.getInt() != FILE_MAGIC) {
+                throw new IOException("Not a segment file");
+            }
+            int version = buffer.getInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported segment file version " + version);
+            }
+            int size = buffer.getInt();
+            if (size < 0 || channel.size() != FILE_HEADER_BYTES + size * 4L * Double.BYTES) {
+                throw new IOException("Segment file is truncated or corrupt");
+            }
+
+            SegmentBuffer segments = new SegmentBuffer(size);
+            int coordinates = size * 4;
+            int read = 0;
+            while (read < coordinates) {
+                buffer.clear();
+                buffer.limit(Math.min(buffer.capacity(), (coordinates - read) * Double.BYTES));
+                readFully(channel, buffer);
+                buffer.flip();
+                int count = buffer.remaining() / Double.BYTES;
+                buffer.asDoubleBuffer().get(segments.mCoordinates, read, count);
+                read += count;
+            }
+            segments.mSize = size;
+            return segments;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Segment file is truncated");
+            }
+        }
+    }
+
+    /**
+     * Reads segments from a text file with one segment per line as {@code x1,y1,x2,y2}. Blank lines and lines
+     * starting with # are skipped. The file is decoded and parsed a block at a time without creating a string per
+     * line or per number.
+     * @param path the file to read
+     * @return the segments
+     * @throws IOException if the file cannot be read or a line is not four numbers
+     */
+    public static SegmentBuffer loadCsv(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SegmentBuffer segments = new SegmentBuffer((int) Math.min(1 << 20, channel.size() / 16 + 1));
+            CsvParser parser = new CsvParser();
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES);
+            boolean end = false;
+            while (!end) {
+                end = channel.read(buffer) < 0;
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                int start = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        parser.parseLine(bytes, start, i, segments);
+                        start = i + 1;
+                    }
+                }
+                if (end && start < limit) {
+                    parser.parseLine(bytes, start, limit, segments);
+                    start = limit;
+                }
+
+                // keep the partial line at the end for the next block
+                buffer.position(start);
+                buffer.compact();
+                if (!end && !buffer.hasRemaining()) {
+                    throw new IOException("Line " + (parser.mLineNumber + 1) + " is too long");
+                }
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Parses the numbers of one line at a time from raw bytes.
+     */
+    private static class CsvParser {
+        private final double[] mValues = new double[4];
+        private int mLineNumber;
+        private int mPosition;
+
+        void parseLine(byte[] bytes, int start, int end, SegmentBuffer segments) throws IOException {
+            mLineNumber++;
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            mPosition = skipSpaces(bytes, start, end);
+            if (mPosition == end || bytes[mPosition] == '#') {
+                return;
+            }
+
+            for (int i = 0; i < 4; i++) {
+                if (i > 0) {
+                    if (mPosition == end || bytes[mPosition] != ',') {
+                        throw new IOException("Line " + mLineNumber + " does not have four values");
+                    }
+                    mPosition = skipSpaces(bytes, mPosition + 1, end);
+                }
+                mValues[i] = parseDouble(bytes, end);
+                mPosition = skipSpaces(bytes, mPosition, end);
+            }
+            if (mPosition != end) {
+                throw new IOException("Line " + mLineNumber + " has more than four values");
+            }
+            segments.add(mValues[0], mValues[1], mValues[2], mValues[3]);
+        }
+
+        private static int skipSpaces(byte[] bytes, int position, int end) {
+            while (position < end && (bytes[position] == ' ' || bytes[position] == '\t')) {
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * Parses the number starting at the current position. Numbers whose digits and exponent fit a double exactly
+         * are converted with a single multiply or divide, which rounds correctly, and anything else is handed to
+         * {@link Double#parseDouble}.
+         */
+        private double parseDouble(byte[] bytes, int end) throws IOException {
+            int start = mPosition;
+            int i = start;
+            boolean negative = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean exact = true;
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++, digits++) {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                } else {
+                    exact = false;
+                }
+            }
+            if (i < end && bytes[i] == '.') {
+                for (i++; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++, digits++) {
+                    if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                        mantissa = mantissa * 10 + (bytes[i] - '0');
+                        exponent--;
+                    } else {
+                        exact = false;
+                    }
+                }
+            }
+            if (digits == 0) {
+                throw new IOException("Line " + mLineNumber + " has a value that is not a number");
+            }
+            if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+                int j = i + 1;
+                boolean negativeExponent = false;
+                if (j < end && (bytes[j] == '-' || bytes[j] == '+')) {
+                    negativeExponent = bytes[j] == '-';
+                    j++;
+                }
+                int power = 0;
+                int powerDigits = 0;
+                for (; j < end && bytes[j] >= '0' && bytes[j] <= '9'; j++, powerDigits++) {
+                    power = Math.min(power * 10 + (bytes[j] - '0'), 100000);
+                }
+                if (powerDigits == 0) {
+                    throw new IOException("Line " + mLineNumber + " has a value that is not a number");
+                }
+                exponent += negativeExponent ? -power : power;
+                i = j;
+            }
+            mPosition = i;
+
+            if (exact && exponent >= -MAX_EXACT_POWER && exponent <= MAX_EXACT_POWER) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(bytes, start, i - start, StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,739 @@
+package bsptree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Every intersection between the segments of a scene, found by sweeping a vertical line across the scene from left to
+ * right in the manner of Bentley and Ottmann. The segments crossing the sweep line are kept in order from bottom to
+ * top, and only segments next to each other in that order are ever tested, so n segments with k intersections cost
+ * O((n + k) log n) rather than the n * n tests of trying every pair.
+ *
+ * Pairs of segments intersect exactly when {@link Intersect#linesIntersect} says they do: touching counts, and
+ * parallel segments never intersect even if they overlap. Segments of no length are ignored.
+ *
+ * The intersections are held in primitive arrays in the order they were found, and the scene can be cut at them so
+ * that no segment crosses another before it is built into a tree, see {@link #splitSegments()}.
+ */
+public class SegmentIntersections {
+
+    // how close, as a fraction of the size of the scene, segments must pass to a point to be sorted at it together
+    private static final double SWEEP_TOLERANCE = 1e-9;
+    // how close to either end of a segment, as a fraction of its length, an intersection is taken as touching its end
+    private static final double SPLIT_TOLERANCE = 1e-9;
+
+    // event kinds, in the order they are handled at the same x
+    private static final int START = 0;
+    private static final int CROSS = 1;
+    private static final int VERTICAL = 2;
+    private static final int END = 3;
+
+    private final SegmentBuffer mSegments;
+
+    // the intersections: the two segments, first < second, where they meet, and how far along each
+    private int[] mFirsts = new int[16];
+    private int[] mSeconds = new int[16];
+    private double[] mXs = new double[16];
+    private double[] mYs = new double[16];
+    private double[] mFirstTs = new double[16];
+    private double[] mSecondTs = new double[16];
+    private int mSize;
+
+    // the segments with their ends ordered left to right, and their slopes
+    private double[] mLeftX;
+    private double[] mLeftY;
+    private double[] mRightX;
+    private double[] mRightY;
+    private double[] mSlopes;
+    private double mTolerance;
+
+    // the events, a binary heap ordered by x, then kind, then y
+    private double[] mEventX = new double[16];
+    private double[] mEventY = new double[16];
+    private int[] mEventKinds = new int[16];
+    private int[] mEventFirsts = new int[16];
+    private int[] mEventSeconds = new int[16];
+    private int mEventCount;
+
+    // the segments crossing the sweep line, a treap in bottom to top order, its nodes are slots holding segments
+    private int[] mLeft;
+    private int[] mRight;
+    private int[] mParent;
+    private int[] mPriorities;
+    private int[] mSegmentAt;
+    private int[] mSlotOf;
+    private int[] mFreeSlots;
+    private int mFreeCount;
+    private int mRoot = -1;
+
+    // pairs whose intersection has been scheduled as an event, and pairs that have been reported
+    private final LongSet mScheduled = new LongSet();
+    private final LongSet mReported = new LongSet();
+
+    private final double[] mParameters = new double[2];
+    private int[] mRun = new int[16];
+
+    public SegmentIntersections(SegmentBuffer segments) {
+        mSegments = segments;
+        sweep();
+
+        // the sweep state is only needed while sweeping
+        mLeftX = mLeftY = mRightX = mRightY = mSlopes = null;
+        mEventX = mEventY = null;
+        mEventKinds = mEventFirsts = mEventSeconds = null;
+        mLeft = mRight = mParent = mPriorities = mSegmentAt = mSlotOf = mFreeSlots = null;
+        mRun = null;
+    }
+
+    /**
+     * Cuts lines wherever another line crosses or ends on them, so no line passes through another.
+     * @param lines the lines to cut
+     * @return the lines in order, each replaced by its pieces in order from its first end if it was cut, pieces having
+     * the label and origin of the line they were cut from
+     */
+    public static List<Line> splitLines(List<Line> lines) {
+        SegmentBuffer segments = new SegmentBuffer(lines.size());
+        for (Line line : lines) {
+            segments.add(line.x1, line.y1, line.x2, line.y2);
+        }
+        SegmentIntersections intersections = new SegmentIntersections(segments);
+        double[][] cuts = intersections.cuts();
+
+        List<Line> pieces = new ArrayList<>(lines.size() + intersections.size() * 2);
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            if (cuts[i] == null) {
+                pieces.add(line);
+                continue;
+            }
+            double t0 = 0;
+            for (int j = 0; j <= cuts[i].length; j++) {
+                double t1 = j < cuts[i].length ? cuts[i][j] : 1;
+                pieces.add(line.subLine(line.label, along(line.x1, line.x2, t0), along(line.y1, line.y2, t0),
+                        along(line.x1, line.x2, t1), along(line.y1, line.y2, t1)));
+                t0 = t1;
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Cuts the segments wherever another segment crosses or ends on them, so no segment passes through another.
+     * @return the segments in order, each replaced by its pieces in order from its first end if it was cut
+     */
+    public SegmentBuffer splitSegments() {
+        double[][] cuts = cuts();
+        SegmentBuffer pieces = new SegmentBuffer(mSegments.size() + mSize * 2);
+        for (int i = 0; i < mSegments.size(); i++) {
+            double x1 = mSegments.x1(i);
+            double y1 = mSegments.y1(i);
+            double x2 = mSegments.x2(i);
+            double y2 = mSegments.y2(i);
+            if (cuts[i] == null) {
+                pieces.add(x1, y1, x2, y2);
+                continue;
+            }
+            double t0 = 0;
+            for (int j = 0; j <= cuts[i].length; j++) {
+                double t1 = j < cuts[i].length ? cuts[i][j] : 1;
+                pieces.add(along(x1, x2, t0), along(y1, y2, t0), along(x1, x2, t1), along(y1, y2, t1));
+                t0 = t1;
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * @return the distinct points along each segment, in increasing order, that it is to be cut at, or null for a
+     * segment that is not cut
+     */
+    private double[][] cuts() {
+        int[] counts = new int[mSegments.size()];
+        for (int i = 0; i < mSize; i++) {
+            counts[mFirsts[i]] += isInterior(mFirstTs[i]) ? 1 : 0;
+            counts[mSeconds[i]] += isInterior(mSecondTs[i]) ? 1 : 0;
+        }
+        double[][] cuts = new double[mSegments.size()][];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                cuts[i] = new double[counts[i]];
+                counts[i] = 0;
+            }
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (isInterior(mFirstTs[i])) {
+                cuts[mFirsts[i]][counts[mFirsts[i]]++] = mFirstTs[i];
+            }
+            if (isInterior(mSecondTs[i])) {
+                cuts[mSeconds[i]][counts[mSeconds[i]]++] = mSecondTs[i];
+            }
+        }
+
+        // several segments can cross a segment at the same point
+        for (int i = 0; i < cuts.length; i++) {
+            if (cuts[i] == null) {
+                continue;
+            }
+            Arrays.sort(cuts[i]);
+            int distinct = 1;
+            for (int j = 1; j < cuts[i].length; j++) {
+                if (cuts[i][j] - cuts[i][distinct - 1] > SPLIT_TOLERANCE) {
+                    cuts[i][distinct++] = cuts[i][j];
+                }
+            }
+            cuts[i] = Arrays.copyOf(cuts[i], distinct);
+        }
+        return cuts;
+    }
+
+    private static boolean isInterior(double t) {
+        return t > SPLIT_TOLERANCE && t < 1 - SPLIT_TOLERANCE;
+    }
+
+    private static double along(double v1, double v2, double t) {
+        return t == 1 ? v2 : v1 + (v2 - v1) * t;
+    }
+
+    /**
+     * @return the number of intersections, each pair of segments that meet counting once
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the lower numbered segment of an intersection
+     */
+    public int first(int intersection) {
+        return mFirsts[intersection];
+    }
+
+    /**
+     * @return the higher numbered segment of an intersection
+     */
+    public int second(int intersection) {
+        return mSeconds[intersection];
+    }
+
+    public double x(int intersection) {
+        return mXs[intersection];
+    }
+
+    public double y(int intersection) {
+        return mYs[intersection];
+    }
+
+    /**
+     * @return how far along the first segment the intersection is, 0 at its first end and 1 at its second
+     */
+    public double firstT(int intersection) {
+        return mFirstTs[intersection];
+    }
+
+    /**
+     * @return how far along the second segment the intersection is, 0 at its first end and 1 at its second
+     */
+    public double secondT(int intersection) {
+        return mSecondTs[intersection];
+    }
+
+    /**
+     * @return true if the segments cross, rather than one only touching the other with its end
+     */
+    public boolean crosses(int intersection) {
+        return isInterior(mFirstTs[intersection]) && isInterior(mSecondTs[intersection]);
+    }
+
+    private void sweep() {
+        int count = mSegments.size();
+        mLeftX = new double[count];
+        mLeftY = new double[count];
+        mRightX = new double[count];
+        mRightY = new double[count];
+        mSlopes = new double[count];
+        mLeft = new int[count];
+        mRight = new int[count];
+        mParent = new int[count];
+        mPriorities = new int[count];
+        mSegmentAt = new int[count];
+        mSlotOf = new int[count];
+        mFreeSlots = new int[count];
+
+        Random random = new Random(count);
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double x1 = mSegments.x1(i);
+            double y1 = mSegments.y1(i);
+            double x2 = mSegments.x2(i);
+            double y2 = mSegments.y2(i);
+            boolean leftFirst = x1 < x2 || (x1 == x2 && y1 <= y2);
+            mLeftX[i] = leftFirst ? x1 : x2;
+            mLeftY[i] = leftFirst ? y1 : y2;
+            mRightX[i] = leftFirst ? x2 : x1;
+            mRightY[i] = leftFirst ? y2 : y1;
+            mSlopes[i] = (mRightY[i] - mLeftY[i]) / (mRightX[i] - mLeftX[i]);
+            mSlotOf[i] = -1;
+            mFreeSlots[mFreeCount++] = count - 1 - i;
+            mPriorities[i] = random.nextInt();
+
+            minX = Math.min(minX, mLeftX[i]);
+            maxX = Math.max(maxX, mRightX[i]);
+            minY = Math.min(minY, Math.min(y1, y2));
+            maxY = Math.max(maxY, Math.max(y1, y2));
+
+            if (x1 == x2 && y1 == y2) {
+                continue;
+            }
+            if (x1 == x2) {
+                addEvent(VERTICAL, mLeftX[i], mLeftY[i], i, -1);
+            } else {
+                addEvent(START, mLeftX[i], mLeftY[i], i, -1);
+                addEvent(END, mRightX[i], mRightY[i], i, -1);
+            }
+        }
+        mTolerance = SWEEP_TOLERANCE * Math.max(1, Math.max(maxX - minX, maxY - minY));
+
+        while (mEventCount > 0) {
+            int kind = mEventKinds[0];
+            double x = mEventX[0];
+            double y = mEventY[0];
+            int first = mEventFirsts[0];
+            int second = mEventSeconds[0];
+            removeEvent();
+
+            switch (kind) {
+                case START:
+                    insert(first, x, y);
+                    int slot = mSlotOf[first];
+                    check(previous(slot), slot);
+                    check(slot, next(slot));
+                    break;
+                case CROSS:
+                    cross(first, second, x, y);
+                    break;
+                case VERTICAL:
+                    vertical(first, x);
+                    break;
+                default:
+                    slot = mSlotOf[first];
+                    int below = previous(slot);
+                    int above = next(slot);
+                    remove(slot);
+                    check(below, above);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Tests two segments next to each other on the sweep line, given by their slots, and schedules their intersection.
+     */
+    private void check(int belowSlot, int aboveSlot) {
+        if (belowSlot < 0 || aboveSlot < 0) {
+            return;
+        }
+        int below = mSegmentAt[belowSlot];
+        int above = mSegmentAt[aboveSlot];
+        long pair = pair(below, above);
+        if (mScheduled.contains(pair) || mReported.contains(pair) || !intersect(below, above)) {
+            return;
+        }
+        mScheduled.add(pair);
+        int first = Math.min(below, above);
+        addEvent(CROSS, mSegments.x1(first) + (mSegments.x2(first) - mSegments.x1(first)) * mParameters[0],
+                mSegments.y1(first) + (mSegments.y2(first) - mSegments.y1(first)) * mParameters[0], below, above);
+    }
+
+    /**
+     * Handles two segments meeting at (x, y). Every segment on the sweep line passing through the point is sorted into
+     * its order just to the right of it, and every pair of them that meets is reported, so a point where many
+     * segments meet is only handled once.
+     */
+    private void cross(int first, int second, double x, double y) {
+        if (mReported.contains(pair(first, second))) {
+            return;
+        }
+        int slot = mSlotOf[first] >= 0 ? mSlotOf[first] : mSlotOf[second];
+        if (slot < 0) {
+            // both have left the sweep line, which rounding can cause when their intersection is right at the end
+            report(first, second);
+            return;
+        }
+
+        int start = slot;
+        while (previous(start) >= 0 && passesThrough(previous(start), x, y)) {
+            start = previous(start);
+        }
+        int run = 0;
+        for (int s = start; s >= 0 && (s == slot || passesThrough(s, x, y)); s = next(s)) {
+            if (run == mRun.length) {
+                mRun = Arrays.copyOf(mRun, run * 2);
+            }
+            mRun[run++] = mSegmentAt[s];
+        }
+
+        for (int i = 0; i < run; i++) {
+            for (int j = i + 1; j < run; j++) {
+                if (!mReported.contains(pair(mRun[i], mRun[j])) && intersect(mRun[i], mRun[j])) {
+                    report(mRun[i], mRun[j]);
+                }
+            }
+        }
+        if (!mReported.contains(pair(first, second))) {
+            report(first, second);
+        }
+
+        // put the run in order just to the right of the point, by slope, into the slots it occupied
+        for (int i = 1; i < run; i++) {
+            int segment = mRun[i];
+            int j = i;
+            for (; j > 0 && isBelow(segment, mRun[j - 1]); j--) {
+                mRun[j] = mRun[j - 1];
+            }
+            mRun[j] = segment;
+        }
+        int s = start;
+        for (int i = 0; i < run; i++, s = next(s)) {
+            mSegmentAt[s] = mRun[i];
+            mSlotOf[mRun[i]] = s;
+        }
+        int end = mSlotOf[mRun[run - 1]];
+        check(previous(start), start);
+        check(end, next(end));
+    }
+
+    private boolean isBelow(int segment, int other) {
+        return mSlopes[segment] < mSlopes[other] || (mSlopes[segment] == mSlopes[other] && segment < other);
+    }
+
+    private boolean passesThrough(int slot, double x, double y) {
+        return Math.abs(yAt(mSegmentAt[slot], x) - y) <= mTolerance;
+    }
+
+    /**
+     * Reports every segment on the sweep line that a vertical segment meets. They are next to each other on the
+     * sweep line, so only they and the one either side are tested.
+     */
+    private void vertical(int segment, double x) {
+        double bottom = mLeftY[segment] - mTolerance;
+        double top = mRightY[segment] + mTolerance;
+
+        // the lowest segment at or above the bottom of the vertical segment
+        int slot = -1;
+        for (int s = mRoot; s >= 0;) {
+            if (yAt(mSegmentAt[s], x) >= bottom) {
+                slot = s;
+                s = mLeft[s];
+            } else {
+                s = mRight[s];
+            }
+        }
+        for (; slot >= 0 && yAt(mSegmentAt[slot], x) <= top; slot = next(slot)) {
+            if (intersect(segment, mSegmentAt[slot])) {
+                report(segment, mSegmentAt[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the y coordinate of a segment that is not vertical where it crosses the vertical line at x
+     */
+    private double yAt(int segment, double x) {
+        if (x == mRightX[segment]) {
+            return mRightY[segment];
+        }
+        return mLeftY[segment] + (x - mLeftX[segment]) * mSlopes[segment];
+    }
+
+    /**
+     * Tests two segments, leaving how far along the lower numbered and higher numbered segments they meet in
+     * mParameters.
+     */
+    private boolean intersect(int a, int b) {
+        int first = Math.min(a, b);
+        int second = Math.max(a, b);
+        return Intersect.linesIntersect(mSegments.x1(first), mSegments.y1(first), mSegments.x2(first),
+                mSegments.y2(first), mSegments.x1(second), mSegments.y1(second), mSegments.x2(second),
+                mSegments.y2(second), mParameters);
+    }
+
+    /**
+     * Adds the intersection of two segments just tested by {@link #intersect}.
+     */
+    private void report(int a, int b) {
+        if (!intersect(a, b)) {
+            return;
+        }
+        mReported.add(pair(a, b));
+        if (mSize == mFirsts.length) {
+            int capacity = mSize * 2;
+            mFirsts = Arrays.copyOf(mFirsts, capacity);
+            mSeconds = Arrays.copyOf(mSeconds, capacity);
+            mXs = Arrays.copyOf(mXs, capacity);
+            mYs = Arrays.copyOf(mYs, capacity);
+            mFirstTs = Arrays.copyOf(mFirstTs, capacity);
+            mSecondTs = Arrays.copyOf(mSecondTs, capacity);
+        }
+        int first = Math.min(a, b);
+        double t = mParameters[0];
+        mFirsts[mSize] = first;
+        mSeconds[mSize] = Math.max(a, b);
+        mXs[mSize] = mSegments.x1(first) + (mSegments.x2(first) - mSegments.x1(first)) * t;
+        mYs[mSize] = mSegments.y1(first) + (mSegments.y2(first) - mSegments.y1(first)) * t;
+        mFirstTs[mSize] = t;
+        mSecondTs[mSize] = mParameters[1];
+        mSize++;
+    }
+
+    private static long pair(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private void addEvent(int kind, double x, double y, int first, int second) {
+        if (mEventCount == mEventX.length) {
+            int capacity = mEventCount * 2;
+            mEventX = Arrays.copyOf(mEventX, capacity);
+            mEventY = Arrays.copyOf(mEventY, capacity);
+            mEventKinds = Arrays.copyOf(mEventKinds, capacity);
+            mEventFirsts = Arrays.copyOf(mEventFirsts, capacity);
+            mEventSeconds = Arrays.copyOf(mEventSeconds, capacity);
+        }
+        int i = mEventCount++;
+        setEvent(i, kind, x, y, first, second);
+        while (i > 0 && isEarlier(i, (i - 1) / 2)) {
+            swapEvents(i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private void removeEvent() {
+        mEventCount--;
+        setEvent(0, mEventKinds[mEventCount], mEventX[mEventCount], mEventY[mEventCount], mEventFirsts[mEventCount],
+                mEventSeconds[mEventCount]);
+        int i = 0;
+        while (true) {
+            int earliest = i;
+            int left = i * 2 + 1;
+            if (left < mEventCount && isEarlier(left, earliest)) {
+                earliest = left;
+            }
+            if (left + 1 < mEventCount && isEarlier(left + 1, earliest)) {
+                earliest = left + 1;
+            }
+            if (earliest == i) {
+                return;
+            }
+            swapEvents(i, earliest);
+            i = earliest;
+        }
+    }
+
+    private boolean isEarlier(int i, int j) {
+        if (mEventX[i] != mEventX[j]) {
+            return mEventX[i] < mEventX[j];
+        }
+        if (mEventKinds[i] != mEventKinds[j]) {
+            return mEventKinds[i] < mEventKinds[j];
+        }
+        return mEventY[i] < mEventY[j];
+    }
+
+    private void setEvent(int i, int kind, double x, double y, int first, int second) {
+        mEventKinds[i] = kind;
+        mEventX[i] = x;
+        mEventY[i] = y;
+        mEventFirsts[i] = first;
+        mEventSeconds[i] = second;
+    }
+
+    private void swapEvents(int i, int j) {
+        int kind = mEventKinds[i];
+        double x = mEventX[i];
+        double y = mEventY[i];
+        int first = mEventFirsts[i];
+        int second = mEventSeconds[i];
+        setEvent(i, mEventKinds[j], mEventX[j], mEventY[j], mEventFirsts[j], mEventSeconds[j]);
+        setEvent(j, kind, x, y, first, second);
+    }
+
+    /**
+     * Adds a segment to the sweep line where it starts at (x, y).
+     */
+    private void insert(int segment, double x, double y) {
+        int slot = mFreeSlots[--mFreeCount];
+        mSegmentAt[slot] = segment;
+        mSlotOf[segment] = slot;
+        mLeft[slot] = -1;
+        mRight[slot] = -1;
+
+        if (mRoot < 0) {
+            mParent[slot] = -1;
+            mRoot = slot;
+            return;
+        }
+        int parent = mRoot;
+        while (true) {
+            int other = mSegmentAt[parent];
+            double otherY = yAt(other, x);
+            boolean below = y < otherY || (y == otherY && isBelow(segment, other));
+            int child = below ? mLeft[parent] : mRight[parent];
+            if (child < 0) {
+                if (below) {
+                    mLeft[parent] = slot;
+                } else {
+                    mRight[parent] = slot;
+                }
+                mParent[slot] = parent;
+                break;
+            }
+            parent = child;
+        }
+        while (mParent[slot] >= 0 && mPriorities[slot] > mPriorities[mParent[slot]]) {
+            rotateUp(slot);
+        }
+    }
+
+    private void remove(int slot) {
+        // rotate the slot down until it is a leaf, keeping the heap order of the priorities, then cut it off
+        while (mLeft[slot] >= 0 || mRight[slot] >= 0) {
+            int child;
+            if (mLeft[slot] < 0) {
+                child = mRight[slot];
+            } else if (mRight[slot] < 0) {
+                child = mLeft[slot];
+            } else {
+                child = mPriorities[mLeft[slot]] > mPriorities[mRight[slot]] ? mLeft[slot] : mRight[slot];
+            }
+            rotateUp(child);
+        }
+        int parent = mParent[slot];
+        if (parent < 0) {
+            mRoot = -1;
+        } else if (mLeft[parent] == slot) {
+            mLeft[parent] = -1;
+        } else {
+            mRight[parent] = -1;
+        }
+        mSlotOf[mSegmentAt[slot]] = -1;
+        mFreeSlots[mFreeCount++] = slot;
+    }
+
+    /**
+     * Rotates a slot above its parent, keeping the order of the slots.
+     */
+    private void rotateUp(int slot) {
+        int parent = mParent[slot];
+        int grandparent = mParent[parent];
+        if (mLeft[parent] == slot) {
+            mLeft[parent] = mRight[slot];
+            if (mRight[slot] >= 0) {
+                mParent[mRight[slot]] = parent;
+            }
+            mRight[slot] = parent;
+        } else {
+            mRight[parent] = mLeft[slot];
+            if (mLeft[slot] >= 0) {
+                mParent[mLeft[slot]] = parent;
+            }
+            mLeft[slot] = parent;
+        }
+        mParent[parent] = slot;
+        mParent[slot] = grandparent;
+        if (grandparent < 0) {
+            mRoot = slot;
+        } else if (mLeft[grandparent] == parent) {
+            mLeft[grandparent] = slot;
+        } else {
+            mRight[grandparent] = slot;
+        }
+    }
+
+    /**
+     * @return the slot above the given one on the sweep line, or -1 if it is the top
+     */
+    private int next(int slot) {
+        if (mRight[slot] >= 0) {
+            slot = mRight[slot];
+            while (mLeft[slot] >= 0) {
+                slot = mLeft[slot];
+            }
+            return slot;
+        }
+        while (mParent[slot] >= 0 && mRight[mParent[slot]] == slot) {
+            slot = mParent[slot];
+        }
+        return mParent[slot];
+    }
+
+    /**
+     * @return the slot below the given one on the sweep line, or -1 if it is the bottom
+     */
+    private int previous(int slot) {
+        if (mLeft[slot] >= 0) {
+            slot = mLeft[slot];
+            while (mRight[slot] >= 0) {
+                slot = mRight[slot];
+            }
+            return slot;
+        }
+        while (mParent[slot] >= 0 && mLeft[mParent[slot]] == slot) {
+            slot = mParent[slot];
+        }
+        return mParent[slot];
+    }
+
+    /**
+     * A set of longs by open addressing, holding pairs of segments without an object for each.
+     */
+    private static class LongSet {
+        private static final long EMPTY = -1;
+
+        private long[] mKeys = new long[64];
+        private int mSize;
+
+        LongSet() {
+            Arrays.fill(mKeys, EMPTY);
+        }
+
+        boolean contains(long key) {
+            int mask = mKeys.length - 1;
+            for (int i = hash(key) & mask; mKeys[i] != EMPTY; i = (i + 1) & mask) {
+                if (mKeys[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long key) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                long[] keys = mKeys;
+                mKeys = new long[keys.length * 2];
+                Arrays.fill(mKeys, EMPTY);
+                mSize = 0;
+                for (long k : keys) {
+                    if (k != EMPTY) {
+                        add(k);
+                    }
+                }
+            }
+            int mask = mKeys.length - 1;
+            int i = hash(key) & mask;
+            for (; mKeys[i] != EMPTY; i = (i + 1) & mask) {
+                if (mKeys[i] == key) {
+                    return;
+                }
+            }
+            mKeys[i] = key;
+            mSize++;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
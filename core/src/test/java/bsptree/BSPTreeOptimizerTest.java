@@ -0,0 +1,69 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+class BSPTreeOptimizerTest {
+
+    @Test
+    void seededSearchIsTheSameOnEveryRun() {
+        List<Line> scene = Scenes.random(500, 100);
+        OptimizerResult expected = new BSPTreeOptimizer(101).optimize(scene, 16, 0, false);
+        assertEquals(16, expected.getCandidatesBuilt());
+        for (boolean parallel : new boolean[] { false, true, true }) {
+            OptimizerResult actual = new BSPTreeOptimizer(101).optimize(scene, 16, 0, parallel);
+            assertEquals(expected.getCandidate(), actual.getCandidate());
+            assertEquals(expected.getScore(), actual.getScore());
+            assertEquals(16, actual.getCandidatesBuilt());
+            Scenes.assertSameTree(expected.getTree().compile(), actual.getTree().compile());
+        }
+    }
+
+    @Test
+    void bestTreeIsNoWorseThanTheDefaultBuild() {
+        for (List<Line> scene : List.of(Scenes.random(800, 102), Scenes.rooms(6, 103))) {
+            BSPTreeOptimizer optimizer = new BSPTreeOptimizer(104);
+            double defaultScore = optimizer.score(new BSPTree(scene).getStatistics());
+            for (int iterations : new int[] { 1, 10 }) {
+                OptimizerResult result = optimizer.optimize(scene, iterations, 0, true);
+                assertTrue(result.getScore() <= defaultScore, result.toString());
+                assertEquals(result.getScore(), optimizer.score(result.getTree().getStatistics()));
+            }
+        }
+    }
+
+    @Test
+    void unlimitedIterationsStopAtTheTimeBudget() {
+        List<Line> scene = Scenes.random(2000, 105);
+        BSPTreeOptimizer optimizer = new BSPTreeOptimizer(106);
+        for (boolean parallel : new boolean[] { false, true }) {
+            long start = System.nanoTime();
+            OptimizerResult result = optimizer.optimize(scene, 0, 300, parallel);
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            assertTrue(result.getCandidatesBuilt() > 1, result.toString());
+            // one build of this scene takes a small part of a second
+            assertTrue(elapsedMillis < 3000, elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    void timeBudgetAlwaysBuildsTheDefaultTree() {
+        OptimizerResult result = new BSPTreeOptimizer(107).optimize(Scenes.random(300, 108), 0, 1, true);
+        assertTrue(result.getCandidatesBuilt() >= 1);
+    }
+
+    @Test
+    void searchMustHaveABudget() {
+        BSPTreeOptimizer optimizer = new BSPTreeOptimizer(109);
+        List<Line> scene = Scenes.random(10, 110);
+        assertThrows(IllegalArgumentException.class, () -> optimizer.optimize(scene, 0, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> optimizer.optimize(scene, -1, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> optimizer.optimize(scene, 5, -1, false));
+    }
+}
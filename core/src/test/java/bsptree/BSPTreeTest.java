@@ -0,0 +1,404 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+
+class BSPTreeTest {
+
+    private static final int THREADS = 6;
+
+    @Test
+    void parallelBuildMatchesSequentialBuild() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (List<Line> scene : List.of(Scenes.random(3000, 21), Scenes.rooms(8, 22))) {
+                CompiledBSPTree sequential = new BSPTree(scene, new SampledCostSelector()).compile();
+                for (int cutoff : new int[] { 1, 16, 1000 }) {
+                    CompiledBSPTree parallel = new BSPTree(scene, new SampledCostSelector(), pool, cutoff).compile();
+                    Scenes.assertSameTree(sequential, parallel);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelBuildRejectsACutoffBelowOne() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BSPTree(Scenes.random(10, 1), new SampledCostSelector(), ForkJoinPool.commonPool(), 0));
+    }
+
+    @Test
+    void editsMatchAFreshBuildOfTheSurvivingLines() {
+        for (int interval : new int[] { 0, 50 }) {
+            List<Line> surviving = new ArrayList<>(Scenes.random(600, 50));
+            BSPTree tree = new BSPTree(new ArrayList<>(surviving));
+            tree.setRebalanceInterval(interval);
+            Random rng = new Random(51);
+            for (int i = 1; i <= 300; i++) {
+                if (rng.nextBoolean()) {
+                    Line line = surviving.remove(rng.nextInt(surviving.size()));
+                    assertTrue(tree.remove(line));
+                } else {
+                    double x = rng.nextDouble() * 480, y = rng.nextDouble() * 480;
+                    Line line = new Line(x, y, x + rng.nextDouble() * 40 - 20, y + rng.nextDouble() * 40 - 20);
+                    tree.insert(line);
+                    surviving.add(line);
+                }
+                if (i % 100 == 0) {
+                    assertMatchesFreshBuild(tree, surviving, rng.nextLong());
+                }
+            }
+        }
+    }
+
+    @Test
+    void removeTakesOutEveryPieceOfTheLine() {
+        List<Line> scene = Scenes.random(400, 52);
+        BSPTree tree = new BSPTree(new ArrayList<>(scene));
+        Random rng = new Random(53);
+        boolean split = false;
+        for (int i = 0; i < 100; i++) {
+            Line line = scene.get(rng.nextInt(scene.size()));
+            int pieces = 0;
+            for (Line piece : lines(tree.getRoot())) {
+                if (piece.origin == line) {
+                    pieces++;
+                }
+            }
+            split |= pieces > 1;
+
+            assertEquals(pieces > 0, tree.remove(line));
+            for (Line piece : lines(tree.getRoot())) {
+                assertTrue(piece.origin != line, "a piece of a removed line was left in the tree");
+            }
+            assertFalse(tree.remove(line));
+        }
+        assertTrue(split, "no removed line had been split");
+    }
+
+    @Test
+    void editsLeaveOldSnapshotsUnchanged() {
+        List<Line> scene = Scenes.random(500, 54);
+        BSPTree tree = new BSPTree(new ArrayList<>(scene));
+        tree.setRebalanceInterval(30);
+        BSPTree.Snapshot before = tree.snapshot();
+        List<Line> lines = lines(before.getRoot());
+
+        Random rng = new Random(55);
+        for (int i = 0; i < 200; i++) {
+            if (rng.nextBoolean()) {
+                tree.remove(scene.get(rng.nextInt(scene.size())));
+            } else {
+                double x = rng.nextDouble() * 440, y = rng.nextDouble() * 440;
+                tree.insert(new Line(x, y, x + rng.nextDouble() * 40 - 20, y + rng.nextDouble() * 40 - 20));
+            }
+        }
+        tree.rebalance();
+
+        List<Line> after = lines(before.getRoot());
+        assertEquals(lines.size(), after.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertSame(lines.get(i), after.get(i));
+        }
+        Scenes.assertSameTree(new BSPTree(scene).compile(), before.compile());
+    }
+
+    @Test
+    void snapshotRaycastMatchesCompiledRaycast() {
+        for (List<Line> scene : List.of(Scenes.random(1000, 56), Scenes.rooms(6, 57))) {
+            BSPTree tree = new BSPTree(scene);
+            CompiledBSPTree compiled = tree.compile();
+            assertRaycastsMatch(compiled, tree.snapshot(), 2000, 58);
+        }
+        RayHit hit = new BSPTree(new ArrayList<>()).raycast(new Point2D.Double(), new Vec(1, 0), 1e9);
+        assertFalse(hit.isHit());
+    }
+
+    @Test
+    void lazyBuildMatchesEagerBuild() {
+        List<Line> scene = Scenes.random(2000, 23);
+        CompiledBSPTree eager = new BSPTree(scene, new SampledCostSelector()).compile();
+        for (int levels : new int[] { 1, 3, 8 }) {
+            BSPTree lazy = new BSPTree(scene, new SampledCostSelector(), Hyperplane.DEFAULT_EPSILON, levels);
+            // rays and locates only build the subtrees they enter, which must already be those of the eager tree
+            assertRaycastsMatch(eager, lazy.snapshot(), 500, 24);
+            Random rng = new Random(25);
+            for (int i = 0; i < 500; i++) {
+                double x = rng.nextDouble() * 900, y = rng.nextDouble() * 900;
+                Line expected = eager.line(locate(eager, x, y));
+                Line actual = lazy.locate(x, y).getLine();
+                assertEquals(expected.x1, actual.x1);
+                assertEquals(expected.y1, actual.y1);
+                assertEquals(expected.x2, actual.x2);
+                assertEquals(expected.y2, actual.y2);
+            }
+            Scenes.assertSameTree(eager, lazy.compile());
+        }
+    }
+
+    @Test
+    void lazySegmentBuildMatchesEagerBuild() {
+        List<Line> scene = Scenes.rooms(6, 26);
+        SegmentBuffer segments = new SegmentBuffer(scene.size());
+        for (Line line : scene) {
+            segments.add(line.x1, line.y1, line.x2, line.y2);
+        }
+        CompiledBSPTree eager = new BSPTree(segments).compile();
+        BSPTree lazy = new BSPTree(segments, new SampledCostSelector(), Hyperplane.DEFAULT_EPSILON, 2);
+        assertRaycastsMatch(eager, lazy.snapshot(), 500, 27);
+        Scenes.assertSameTree(eager, lazy.compile());
+    }
+
+    @Test
+    void concurrentReadersBuildALazyTreeOnce() throws Exception {
+        List<Line> scene = Scenes.random(3000, 28);
+        CompiledBSPTree eager = new BSPTree(scene, new SampledCostSelector()).compile();
+        BSPTree lazy = new BSPTree(scene, new SampledCostSelector(), Hyperplane.DEFAULT_EPSILON, 2);
+        BSPTree.Snapshot snapshot = lazy.snapshot();
+
+        // every thread starts together, so they race to build the same subtrees
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> readers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            long seed = 29 + i;
+            readers.add(() -> {
+                start.await();
+                assertRaycastsMatch(eager, snapshot, 2000, seed);
+                return null;
+            });
+        }
+        run(readers, start);
+        Scenes.assertSameTree(eager, snapshot.compile());
+    }
+
+    @Test
+    void snapshotsAreUnchangedByConcurrentEdits() throws Exception {
+        List<Line> scene = Scenes.random(1500, 35);
+        BSPTree tree = new BSPTree(scene);
+        tree.setRebalanceInterval(40);
+        BSPTree.Snapshot before = tree.snapshot();
+        CompiledBSPTree expected = new BSPTree(scene).compile();
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean editing = new AtomicBoolean(true);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            start.await();
+            try {
+                Random rng = new Random(36);
+                List<Line> inserted = new ArrayList<>();
+                for (int i = 0; i < 400; i++) {
+                    if (!inserted.isEmpty() && rng.nextInt(3) == 0) {
+                        tree.remove(inserted.remove(rng.nextInt(inserted.size())));
+                    } else if (rng.nextInt(4) == 0) {
+                        tree.remove(scene.get(rng.nextInt(scene.size())));
+                    } else {
+                        double x = rng.nextDouble() * 770, y = rng.nextDouble() * 770;
+                        Line line = new Line(x, y, x + rng.nextDouble() * 40 - 20, y + rng.nextDouble() * 40 - 20);
+                        tree.insert(line);
+                        inserted.add(line);
+                    }
+                }
+            } finally {
+                editing.set(false);
+            }
+            return null;
+        });
+        for (int i = 0; i < THREADS - 1; i++) {
+            long seed = 37 + i;
+            tasks.add(() -> {
+                start.await();
+                Random rng = new Random(seed);
+                do {
+                    // the snapshot taken before the edits still holds the scene it was built from
+                    assertRaycastsMatch(expected, before, 50, rng.nextLong());
+                    // and any snapshot taken meanwhile is whole, its nodes agreeing with its compiled copy
+                    BSPTree.Snapshot current = tree.snapshot();
+                    assertRaycastsMatch(current.compile(), current, 50, rng.nextLong());
+                } while (editing.get());
+                return null;
+            });
+        }
+        run(tasks, start);
+        Scenes.assertSameTree(expected, before.compile());
+    }
+
+    /**
+     * Checks rays cast through a snapshot's nodes hit the same segments as in a compiled tree.
+     */
+    private static void assertRaycastsMatch(CompiledBSPTree expected, BSPTree.Snapshot snapshot, int rays,
+            long seed) {
+        int root = CompiledBSPTree.ROOT;
+        double minX = expected.minX(root), minY = expected.minY(root);
+        double width = expected.maxX(root) - minX, height = expected.maxY(root) - minY;
+        RayHit hit = new RayHit();
+        Random rng = new Random(seed);
+        for (int i = 0; i < rays; i++) {
+            Point2D.Double origin = new Point2D.Double(minX + rng.nextDouble() * width,
+                    minY + rng.nextDouble() * height);
+            double angle = rng.nextDouble() * Math.PI * 2;
+            Vec direction = new Vec(Math.cos(angle), Math.sin(angle));
+            expected.raycast(origin.x, origin.y, direction.x, direction.y, 1e9, hit);
+            RayHit actual = snapshot.raycast(origin, direction, 1e9);
+            String ray = "ray from " + origin + " at " + angle;
+            assertEquals(hit.isHit(), actual.isHit(), ray);
+            assertEquals(-1, actual.node, ray);
+            if (hit.isHit()) {
+                assertEquals(hit.distance, actual.distance, 1e-9 * Math.max(1, hit.distance), ray);
+                assertEquals(hit.x, actual.x, 1e-9 * Math.max(1, hit.distance), ray);
+                assertEquals(hit.y, actual.y, 1e-9 * Math.max(1, hit.distance), ray);
+                // the piece hit lies along the compiled segment hit
+                Line line = actual.line;
+                assertEquals(0, expected.side(hit.node, line.x1, line.y1), 1e-6, ray);
+                assertEquals(0, expected.side(hit.node, line.x2, line.y2), 1e-6, ray);
+            }
+        }
+    }
+
+    /**
+     * Checks an edited tree against a tree built afresh from the lines it should hold: its pieces are the pieces of
+     * those lines, rays hit the same segments, the last segment drawn along each ray from a viewpoint is the first
+     * one hit, and two points in one cell can see each other.
+     */
+    private static void assertMatchesFreshBuild(BSPTree tree, List<Line> surviving, long seed) {
+        Set<Line> origins = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Line piece : lines(tree.getRoot())) {
+            origins.add(piece.origin);
+        }
+        Set<Line> expectedOrigins = Collections.newSetFromMap(new IdentityHashMap<>());
+        expectedOrigins.addAll(surviving);
+        assertEquals(expectedOrigins, origins);
+
+        CompiledBSPTree edited = tree.compile();
+        CompiledBSPTree fresh = new BSPTree(new ArrayList<>(surviving)).compile();
+        Random rng = new Random(seed);
+        RayHit expected = new RayHit();
+        RayHit actual = new RayHit();
+        Point2D.Double viewPoint = new Point2D.Double();
+        DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+        int[] order = new int[edited.size()];
+        double[] parameters = new double[2];
+        for (int i = 0; i < 20; i++) {
+            viewPoint.setLocation(rng.nextDouble() * 500, rng.nextDouble() * 500);
+            int count = visitor.drawOrder(edited, order);
+            for (int j = 0; j < 50; j++) {
+                double angle = rng.nextDouble() * Math.PI * 2;
+                double dx = Math.cos(angle), dy = Math.sin(angle);
+                String ray = "ray from " + viewPoint + " at " + angle;
+                fresh.raycast(viewPoint.x, viewPoint.y, dx, dy, 1e4, expected);
+                edited.raycast(viewPoint.x, viewPoint.y, dx, dy, 1e4, actual);
+                assertEquals(expected.isHit(), actual.isHit(), ray);
+
+                double lastDrawn = Double.NaN;
+                for (int k = 0; k < count; k++) {
+                    int node = order[k];
+                    if (Intersect.linesIntersect(viewPoint.x, viewPoint.y, viewPoint.x + dx * 1e4,
+                            viewPoint.y + dy * 1e4, edited.x1(node), edited.y1(node), edited.x2(node),
+                            edited.y2(node), parameters)) {
+                        lastDrawn = parameters[0] * 1e4;
+                    }
+                }
+                if (expected.isHit()) {
+                    assertEquals(expected.distance, actual.distance, 1e-6, ray);
+                    assertEquals(expected.distance, lastDrawn, 1e-6, ray);
+                }
+
+                // a point a short way along the ray in the same cell is in plain sight
+                double x = viewPoint.x + dx * 5, y = viewPoint.y + dy * 5;
+                if (edited.locate(viewPoint.x, viewPoint.y) == edited.locate(x, y)) {
+                    for (Line line : surviving) {
+                        assertFalse(Intersect.linesIntersect(viewPoint.x, viewPoint.y, x, y, line.x1, line.y1,
+                                line.x2, line.y2, parameters), ray + " passes through a wall inside its cell");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the lines of a tree's nodes in pre-order, fronts first
+     */
+    private static List<Line> lines(BSPTree.Node root) {
+        List<Line> lines = new ArrayList<>();
+        List<BSPTree.Node> pending = new ArrayList<>();
+        if (root != null) {
+            pending.add(root);
+        }
+        while (!pending.isEmpty()) {
+            BSPTree.Node node = pending.remove(pending.size() - 1);
+            lines.add(node.getLine());
+            if (node.getBackNode() != null) {
+                pending.add(node.getBackNode());
+            }
+            if (node.getFrontNode() != null) {
+                pending.add(node.getFrontNode());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the last node on the way to the cell containing a point, as {@link BSPTree.Snapshot#locate} finds it
+     */
+    private static int locate(CompiledBSPTree tree, double x, double y) {
+        int node = CompiledBSPTree.ROOT;
+        while (true) {
+            int next = tree.side(node, x, y) > 0 ? tree.front(node) : tree.back(node);
+            if (next < 0) {
+                return node;
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Runs tasks on their own threads once the latch is released, rethrowing the first failure.
+     */
+    private static void run(List<Callable<Void>> tasks, CountDownLatch start) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                try {
+                    future.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
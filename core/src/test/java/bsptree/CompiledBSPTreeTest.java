@@ -0,0 +1,245 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class CompiledBSPTreeTest {
+
+    @Test
+    void raycastFindsTheNearestSegment() {
+        List<Line> lines = Scenes.random(400, 12);
+        assertRaycastsMatch(lines, 1e9, 13);
+        assertRaycastsMatch(lines, 30, 14);
+    }
+
+    @Test
+    void raycastFindsTheNearestWallAmongCoincidentPlanes() {
+        // rays along the rooms cross the planes of many walls at once, and pass through doorways next to them
+        List<Line> lines = Scenes.rooms(6, 15);
+        assertRaycastsMatch(lines, 1e9, 16);
+        assertRaycastsMatch(lines, 150, 17);
+    }
+
+    @Test
+    void raycastMissesAnEmptyTree() {
+        CompiledBSPTree tree = new BSPTree(Scenes.random(0, 18)).compile();
+        RayHit hit = new RayHit();
+        assertFalse(tree.raycast(0, 0, 1, 0, 1e9, hit));
+        assertFalse(hit.isHit());
+    }
+
+    @Test
+    void batchedRaycastsMatchSingleRaycasts() {
+        CompiledBSPTree tree = new BSPTree(Scenes.rooms(4, 19)).compile();
+        Random rng = new Random(20);
+        int count = 500;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] dxs = new double[count];
+        double[] dys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = rng.nextDouble() * 400;
+            ys[i] = rng.nextDouble() * 400;
+            double angle = rng.nextDouble() * Math.PI * 2;
+            dxs[i] = Math.cos(angle);
+            dys[i] = Math.sin(angle);
+        }
+        int[] nodes = new int[count];
+        double[] distances = new double[count];
+        tree.raycast(xs, ys, dxs, dys, 1e9, nodes, distances, true);
+
+        RayHit hit = new RayHit();
+        for (int i = 0; i < count; i++) {
+            tree.raycast(xs[i], ys[i], dxs[i], dys[i], 1e9, hit);
+            assertEquals(hit.node, nodes[i]);
+            assertEquals(hit.distance, distances[i]);
+        }
+    }
+
+    @Test
+    void loadedTreeMatchesTheTreeWritten(@TempDir Path dir) throws IOException {
+        for (List<Line> scene : List.of(Scenes.random(800, 30), Scenes.rooms(5, 31), Scenes.random(0, 32))) {
+            CompiledBSPTree written = new BSPTree(scene).compile();
+            Path path = dir.resolve("tree.bsp");
+            written.write(path);
+            CompiledBSPTree loaded = CompiledBSPTree.load(path);
+            Scenes.assertSameTree(written, loaded);
+            assertEquals(written.cellCount(), loaded.cellCount());
+            assertSameQueries(written, loaded, 33);
+
+            // a loaded tree writes the same file
+            Path again = dir.resolve("again.bsp");
+            loaded.write(again);
+            assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(again));
+        }
+    }
+
+    @Test
+    void loadRejectsTruncatedFiles(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("tree.bsp");
+        new BSPTree(Scenes.random(100, 34)).compile().write(path);
+        byte[] bytes = Files.readAllBytes(path);
+        for (int length : new int[] { 0, 8, 16, bytes.length / 2, bytes.length - 1 }) {
+            Path truncated = dir.resolve("truncated.bsp");
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> CompiledBSPTree.load(truncated), length + " bytes");
+        }
+    }
+
+    @Test
+    void loadRejectsABadHeader(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("tree.bsp");
+        new BSPTree(Scenes.random(100, 35)).compile().write(path);
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(0, 0x12345678));
+        // version 1 files, which had no subtree sizes, are no longer read
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(4, 1));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(4, 3));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(8, buffer.getInt(8) - 1));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(8, -1));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(12, buffer.getInt(12) + 1));
+
+        Path empty = dir.resolve("empty.bsp");
+        new BSPTree(Scenes.random(0, 36)).compile().write(empty);
+        assertCorruptionRejected(dir, empty, buffer -> buffer.putInt(12, 2));
+    }
+
+    @Test
+    void loadRejectsNodesThatDoNotFormTheTree(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("tree.bsp");
+        CompiledBSPTree tree = new BSPTree(Scenes.rooms(4, 37)).compile();
+        tree.write(path);
+        int size = tree.size();
+        int fronts = 16 + 11 * size * Double.BYTES;
+        int backs = fronts + size * Integer.BYTES;
+        int sizes = backs + size * Integer.BYTES;
+
+        int frontChild = -1, frontCell = -1, backChild = -1;
+        for (int node = 0; node < size; node++) {
+            if (tree.front(node) >= 0 && frontChild < 0) {
+                frontChild = node;
+            }
+            if (tree.front(node) < 0 && frontCell < 0) {
+                frontCell = node;
+            }
+            if (tree.back(node) >= 0 && node > 0 && backChild < 0) {
+                backChild = node;
+            }
+        }
+        int frontNode = frontChild, cellNode = frontCell, backNode = backChild;
+
+        // a child out of place, a loop back to the root and a child past the end
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(fronts + frontNode * 4, frontNode + 2));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(backs + backNode * 4, 0));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(backs + backNode * 4, size));
+        // cells numbered out of order or past the cell count
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(fronts + cellNode * 4, ~(tree.cellCount() - 1)));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(fronts + cellNode * 4, ~tree.cellCount()));
+        // subtree sizes that disagree with the children
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(sizes, size + 1));
+        assertCorruptionRejected(dir, path, buffer -> buffer.putInt(sizes + frontNode * 4,
+                buffer.getInt(sizes + frontNode * 4) - 1));
+    }
+
+    /**
+     * Checks two trees locate points in the same cells, hit the same segments with rays and draw in the same order
+     * from random viewpoints.
+     */
+    private static void assertSameQueries(CompiledBSPTree expected, CompiledBSPTree actual, long seed) {
+        int root = CompiledBSPTree.ROOT;
+        double minX = expected.size() == 0 ? 0 : expected.minX(root);
+        double minY = expected.size() == 0 ? 0 : expected.minY(root);
+        double width = expected.size() == 0 ? 100 : expected.maxX(root) - minX;
+        double height = expected.size() == 0 ? 100 : expected.maxY(root) - minY;
+        RayHit expectedHit = new RayHit();
+        RayHit actualHit = new RayHit();
+        Point2D.Double viewPoint = new Point2D.Double();
+        DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+        int[] expectedOrder = new int[expected.size()];
+        int[] actualOrder = new int[actual.size()];
+        Random rng = new Random(seed);
+        for (int i = 0; i < 200; i++) {
+            viewPoint.setLocation(minX + rng.nextDouble() * width, minY + rng.nextDouble() * height);
+            String view = "from " + viewPoint;
+            assertEquals(expected.locate(viewPoint.x, viewPoint.y), actual.locate(viewPoint.x, viewPoint.y), view);
+
+            double angle = rng.nextDouble() * Math.PI * 2;
+            double dx = Math.cos(angle), dy = Math.sin(angle);
+            assertEquals(expected.raycast(viewPoint.x, viewPoint.y, dx, dy, 1e9, expectedHit),
+                    actual.raycast(viewPoint.x, viewPoint.y, dx, dy, 1e9, actualHit), view);
+            assertEquals(expectedHit.node, actualHit.node, view);
+            assertEquals(expectedHit.distance, actualHit.distance, view);
+
+            int count = visitor.drawOrder(expected, expectedOrder);
+            assertEquals(count, visitor.drawOrder(actual, actualOrder), view);
+            assertArrayEquals(Arrays.copyOf(expectedOrder, count), Arrays.copyOf(actualOrder, count), view);
+        }
+    }
+
+    /**
+     * Writes a copy of a tree file changed by the given edit, and asserts that loading it fails.
+     */
+    private static void assertCorruptionRejected(Path dir, Path path, Consumer<ByteBuffer> edit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        edit.accept(buffer);
+        Path corrupt = Files.createTempFile(dir, "corrupt", ".bsp");
+        Files.write(corrupt, buffer.array());
+        assertThrows(IOException.class, () -> CompiledBSPTree.load(corrupt));
+    }
+
+    /**
+     * Casts rays from random points in random directions, checking each finds the segment nearest along it of all
+     * the lines the tree was built from.
+     */
+    private static void assertRaycastsMatch(List<Line> lines, double maxDistance, long seed) {
+        CompiledBSPTree tree = new BSPTree(lines).compile();
+        int root = CompiledBSPTree.ROOT;
+        double minX = tree.minX(root), minY = tree.minY(root);
+        double width = tree.maxX(root) - minX, height = tree.maxY(root) - minY;
+        RayHit hit = new RayHit();
+        double[] parameters = new double[2];
+        Random rng = new Random(seed);
+
+        for (int i = 0; i < 3000; i++) {
+            double x = minX + rng.nextDouble() * width;
+            double y = minY + rng.nextDouble() * height;
+            double angle = rng.nextDouble() * Math.PI * 2;
+            double dx = Math.cos(angle), dy = Math.sin(angle);
+
+            double nearest = Double.POSITIVE_INFINITY;
+            for (Line line : lines) {
+                if (Intersect.linesIntersect(x, y, x + dx * maxDistance, y + dy * maxDistance, line.x1, line.y1,
+                        line.x2, line.y2, parameters)) {
+                    nearest = Math.min(nearest, parameters[0] * maxDistance);
+                }
+            }
+
+            String ray = "ray from " + x + "," + y + " at " + angle;
+            boolean isHit = tree.raycast(x, y, dx, dy, maxDistance, hit);
+            assertEquals(nearest != Double.POSITIVE_INFINITY, isHit, ray);
+            if (isHit) {
+                assertEquals(nearest, hit.distance, 1e-6 * Math.max(1, nearest), ray);
+                assertTrue(hit.node >= 0 && hit.node < tree.size(), ray);
+                assertEquals(hit.x, x + dx * hit.distance, 1e-6 * Math.max(1, nearest), ray);
+                assertEquals(hit.y, y + dy * hit.distance, 1e-6 * Math.max(1, nearest), ray);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+class DrawOrderCacheTest {
+
+    @Test
+    void cachedOrderMatchesFullOrder() {
+        CompiledBSPTree tree = new BSPTree(Scenes.random(500, 8)).compile();
+        DrawOrderCache cache = new DrawOrderCache(8);
+        Point2D.Double viewPoint = new Point2D.Double();
+        DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+        int[] expected = new int[tree.size()];
+        int[] actual = new int[tree.size()];
+
+        // viewpoints wandering over more cells than the cache holds, and now and then out past the scene
+        Random rng = new Random(9);
+        double size = tree.maxX(CompiledBSPTree.ROOT) - tree.minX(CompiledBSPTree.ROOT);
+        for (int i = 0; i < 4000; i++) {
+            if (i % 40 == 0) {
+                viewPoint.setLocation(tree.minX(CompiledBSPTree.ROOT) + (rng.nextDouble() * 3 - 1) * size,
+                        tree.minY(CompiledBSPTree.ROOT) + (rng.nextDouble() * 3 - 1) * size);
+            } else {
+                viewPoint.setLocation(viewPoint.x + rng.nextGaussian(), viewPoint.y + rng.nextGaussian());
+            }
+            int count = visitor.drawOrder(tree, expected);
+            assertEquals(count, cache.drawOrder(tree, viewPoint, actual));
+            assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(actual, count), "at " + viewPoint);
+        }
+        assertEquals(4000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getHits() > 0);
+    }
+
+    @Test
+    void cacheStartsAgainForAnotherTree() {
+        CompiledBSPTree first = new BSPTree(Scenes.random(200, 10)).compile();
+        CompiledBSPTree second = new BSPTree(Scenes.random(200, 11)).compile();
+        DrawOrderCache cache = new DrawOrderCache();
+        Point2D.Double viewPoint = new Point2D.Double(100, 100);
+        DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+        for (CompiledBSPTree tree : new CompiledBSPTree[] { first, second, first }) {
+            int[] expected = new int[tree.size()];
+            int[] actual = new int[tree.size()];
+            int count = visitor.drawOrder(tree, expected);
+            assertEquals(count, cache.drawOrder(tree, viewPoint, actual));
+            assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(actual, count));
+        }
+        assertEquals(3, cache.getMisses());
+    }
+}
@@ -0,0 +1,126 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+class DrawOrderVisitorTest {
+
+    @Test
+    void updatedOrderMatchesFullOrder() {
+        CompiledBSPTree tree = new BSPTree(Scenes.random(500, 3)).compile();
+        assertUpdatesMatch(tree, 0.5, 4);
+        assertUpdatesMatch(tree, 20, 5);
+    }
+
+    @Test
+    void updatedOrderMatchesFullOrderAmongCoincidentPlanes() {
+        CompiledBSPTree tree = new BSPTree(Scenes.rooms(5, 2)).compile();
+        assertUpdatesMatch(tree, 3, 6);
+        assertUpdatesMatch(tree, 60, 7);
+    }
+
+    @Test
+    void coneOrderIsTheFullOrderOfSegmentsInTheCone() {
+        for (CompiledBSPTree tree : new CompiledBSPTree[] { new BSPTree(Scenes.random(600, 40)).compile(),
+                new BSPTree(Scenes.rooms(5, 41)).compile() }) {
+            Random rng = new Random(42);
+            int root = CompiledBSPTree.ROOT;
+            Point2D.Double viewPoint = new Point2D.Double();
+            DrawOrderVisitor full = new DrawOrderVisitor(viewPoint);
+            DrawOrderVisitor culled = new DrawOrderVisitor(viewPoint);
+            int[] order = new int[tree.size()];
+            int[] culledOrder = new int[tree.size()];
+            boolean skipped = false;
+
+            for (int i = 0; i < 300; i++) {
+                viewPoint.setLocation(tree.minX(root) + rng.nextDouble() * (tree.maxX(root) - tree.minX(root)),
+                        tree.minY(root) + rng.nextDouble() * (tree.maxY(root) - tree.minY(root)));
+                double angle = rng.nextDouble() * Math.PI * 2;
+                double halfAngle = i % 10 == 0 ? Math.PI / 2 : 0.05 + rng.nextDouble() * 1.4;
+                Vec look = new Vec(Math.cos(angle), Math.sin(angle));
+                culled.setViewCone(look, halfAngle);
+
+                int count = full.drawOrder(tree, order);
+                int[] expected = new int[count];
+                int expectedCount = 0;
+                for (int j = 0; j < count; j++) {
+                    int node = order[j];
+                    if (segmentInCone(tree, node, viewPoint, look, halfAngle)) {
+                        expected[expectedCount++] = node;
+                    }
+                }
+                expected = Arrays.copyOf(expected, expectedCount);
+                String view = "from " + viewPoint + " looking at " + angle + " within " + halfAngle;
+
+                int culledCount = culled.drawOrder(tree, culledOrder);
+                assertArrayEquals(expected, Arrays.copyOf(culledOrder, culledCount), view);
+                skipped |= culled.getNodesVisited() < full.getNodesVisited();
+
+                // the visitor walk culls the same way
+                culled.reset();
+                tree.accept(culled);
+                assertArrayEquals(expected, culled.getNodeOrder(), view);
+            }
+            assertTrue(skipped, "no subtree was ever skipped");
+        }
+    }
+
+    /**
+     * Tests whether a segment touches a cone by clipping it to the two half-planes whose intersection is the cone.
+     */
+    private static boolean segmentInCone(CompiledBSPTree tree, int node, Point2D.Double viewPoint, Vec look,
+            double halfAngle) {
+        double t0 = 0;
+        double t1 = 1;
+        for (double turn : new double[] { halfAngle - Math.PI / 2, Math.PI / 2 - halfAngle }) {
+            // the normal of one edge of the cone, pointing into the cone
+            double normalX = look.x * Math.cos(turn) - look.y * Math.sin(turn);
+            double normalY = look.x * Math.sin(turn) + look.y * Math.cos(turn);
+            double start = normalX * (tree.x1(node) - viewPoint.x) + normalY * (tree.y1(node) - viewPoint.y);
+            double end = normalX * (tree.x2(node) - viewPoint.x) + normalY * (tree.y2(node) - viewPoint.y);
+            if (start < 0 && end < 0) {
+                return false;
+            } else if (start < 0) {
+                t0 = Math.max(t0, start / (start - end));
+            } else if (end < 0) {
+                t1 = Math.min(t1, start / (start - end));
+            }
+        }
+        return t0 <= t1;
+    }
+
+    /**
+     * Walks a viewpoint around a tree in random steps, updating one order and checking it against a full order after
+     * every step.
+     */
+    private static void assertUpdatesMatch(CompiledBSPTree tree, double step, long seed) {
+        Random rng = new Random(seed);
+        int root = CompiledBSPTree.ROOT;
+        Point2D.Double viewPoint = new Point2D.Double(
+                (tree.minX(root) + tree.maxX(root)) / 2, (tree.minY(root) + tree.maxY(root)) / 2);
+        Point2D.Double oldViewPoint = new Point2D.Double();
+        DrawOrderVisitor visitor = new DrawOrderVisitor(viewPoint);
+        DrawOrderVisitor full = new DrawOrderVisitor(viewPoint);
+        int[] order = new int[tree.size()];
+        int[] expected = new int[tree.size()];
+        int count = visitor.drawOrder(tree, order);
+
+        for (int i = 0; i < 1000; i++) {
+            oldViewPoint.setLocation(viewPoint);
+            viewPoint.setLocation(viewPoint.x + rng.nextGaussian() * step, viewPoint.y + rng.nextGaussian() * step);
+            count = visitor.updateDrawOrder(tree, order, count, oldViewPoint);
+            int expectedCount = full.drawOrder(tree, expected);
+            assertEquals(expectedCount, count);
+            assertArrayEquals(Arrays.copyOf(expected, expectedCount), Arrays.copyOf(order, count),
+                    "after moving from " + oldViewPoint + " to " + viewPoint);
+        }
+    }
+}
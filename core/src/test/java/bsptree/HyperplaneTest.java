@@ -0,0 +1,51 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+class HyperplaneTest {
+
+    @Test
+    void constructorMatchesCoefficients() {
+        double[] plane = new double[3];
+        Random rng = new Random(60);
+        for (int i = 0; i < 1000; i++) {
+            double x1 = rng.nextDouble() * 100, y1 = rng.nextDouble() * 100;
+            double x2 = i % 100 == 0 ? x1 : rng.nextDouble() * 100, y2 = i % 100 == 0 ? y1 : rng.nextDouble() * 100;
+            Hyperplane hyperplane = new Hyperplane(x1, y1, x2, y2, Hyperplane.DEFAULT_EPSILON);
+            Hyperplane.coefficients(x1, y1, x2, y2, plane);
+            assertEquals(plane[0], hyperplane.a);
+            assertEquals(plane[1], hyperplane.b);
+            assertEquals(plane[2], hyperplane.c);
+        }
+    }
+
+    @Test
+    void classifyGivesTheSplitParameterOfSpanningSegments() {
+        List<Line> scene = Scenes.random(200, 61);
+        double[] parameter = new double[1];
+        boolean spanned = false;
+        for (Line splitter : scene) {
+            Hyperplane plane = new Hyperplane(splitter);
+            for (Line line : scene) {
+                parameter[0] = Double.NaN;
+                int side = plane.classify(line, parameter);
+                assertEquals(plane.classify(line), side);
+                if (side == Hyperplane.SPANNING) {
+                    spanned = true;
+                    assertEquals(plane.splitParameter(line.x1, line.y1, line.x2, line.y2), parameter[0]);
+                    assertTrue(parameter[0] > 0 && parameter[0] < 1);
+                } else {
+                    assertTrue(Double.isNaN(parameter[0]), "the parameter was written for a segment not split");
+                }
+            }
+        }
+        assertTrue(spanned, "no segment was split");
+    }
+}
@@ -0,0 +1,31 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+class IntersectTest {
+
+    @Test
+    void pointIsWhereTheParametersSay() {
+        List<Line> lines = Scenes.random(200, 90);
+        lines.addAll(Scenes.rooms(3, 91));
+        double[] parameters = new double[2];
+        for (Line p : lines) {
+            for (Line q : lines) {
+                Point2D.Double point = Intersect.linesIntersect(p.x1, p.y1, p.x2, p.y2, q.x1, q.y1, q.x2, q.y2);
+                if (Intersect.linesIntersect(p.x1, p.y1, p.x2, p.y2, q.x1, q.y1, q.x2, q.y2, parameters)) {
+                    assertEquals(p.x1 + (p.x2 - p.x1) * parameters[0], point.x);
+                    assertEquals(p.y1 + (p.y2 - p.y1) * parameters[0], point.y);
+                } else {
+                    assertNull(point);
+                }
+            }
+        }
+    }
+}
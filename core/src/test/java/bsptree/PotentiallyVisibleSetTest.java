@@ -0,0 +1,146 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+class PotentiallyVisibleSetTest {
+
+    @Test
+    void everySegmentHitFromACellIsInItsSet() {
+        assertHitsInSets(new BSPTree(Scenes.rooms(5, 70)).compile(), 71);
+        assertHitsInSets(new BSPTree(Scenes.random(300, 72)).compile(), 73);
+    }
+
+    @Test
+    void roomsSeeLessThanTheWholeTree() {
+        CompiledBSPTree tree = new BSPTree(Scenes.rooms(6, 74)).compile();
+        PotentiallyVisibleSet visibleSet = new PotentiallyVisibleSet(tree);
+        long[] visible = new long[(tree.size() + 63) / 64];
+        boolean culled = false;
+        for (int cell = 0; cell < tree.cellCount(); cell++) {
+            visibleSet.visibleNodes(cell, visible);
+            culled |= count(visible) < tree.size();
+        }
+        assertTrue(culled, "every cell sees every segment");
+    }
+
+    @Test
+    void parallelFlowMatchesSequentialFlow() {
+        CompiledBSPTree tree = new BSPTree(Scenes.rooms(5, 75)).compile();
+        PotentiallyVisibleSet sequential = new PotentiallyVisibleSet(tree, false);
+        PotentiallyVisibleSet parallel = new PotentiallyVisibleSet(tree, true);
+        assertEquals(sequential.compressedBytes(), parallel.compressedBytes());
+        long[] expected = new long[(tree.size() + 63) / 64];
+        long[] actual = new long[expected.length];
+        for (int cell = 0; cell < tree.cellCount(); cell++) {
+            sequential.visibleNodes(cell, expected);
+            parallel.visibleNodes(cell, actual);
+            assertArrayEquals(expected, actual, "cell " + cell);
+        }
+    }
+
+    @Test
+    void compressedBitsetsExpandToTheSameBits() {
+        Random rng = new Random(76);
+        for (int size : new int[] { 1, 7, 8, 9, 63, 64, 65, 2040, 2048, 2056, 5000 }) {
+            for (double density : new double[] { 0, 0.001, 0.05, 0.5, 1 }) {
+                long[] bits = new long[(size + 63) / 64];
+                for (int i = 0; i < size; i++) {
+                    if (rng.nextDouble() < density) {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                }
+                byte[] compressed = PotentiallyVisibleSet.compress(bits, size);
+                long[] expanded = new long[bits.length];
+                PotentiallyVisibleSet.expand(compressed, 0, compressed.length, expanded);
+                assertArrayEquals(bits, expanded, size + " bits at density " + density);
+                if (density == 0) {
+                    // runs of zero bytes longer than a byte can count are split
+                    assertEquals(2 * (((size + 7) / 8 + 254) / 255), compressed.length, size + " bits");
+                }
+            }
+        }
+    }
+
+    @Test
+    void isVisibleMatchesTheExpandedSet() {
+        CompiledBSPTree tree = new BSPTree(Scenes.random(600, 77)).compile();
+        PotentiallyVisibleSet visibleSet = new PotentiallyVisibleSet(tree);
+        long[] visible = new long[(tree.size() + 63) / 64];
+        for (int cell = 0; cell < tree.cellCount(); cell++) {
+            visibleSet.visibleNodes(cell, visible);
+            for (int node = 0; node < tree.size(); node++) {
+                assertEquals((visible[node >>> 6] & (1L << node)) != 0, visibleSet.isVisible(cell, node),
+                        "node " + node + " from cell " + cell);
+            }
+        }
+    }
+
+    /**
+     * Casts rays in many directions from sample points in each cell of a tree, checking the segment each ray hits
+     * first is in the set of the cell the ray starts in. Points are random blends of the corners of each cell's shape,
+     * so fall inside it.
+     */
+    private static void assertHitsInSets(CompiledBSPTree tree, long seed) {
+        PotentiallyVisibleSet visibleSet = new PotentiallyVisibleSet(tree);
+        CellPortals portals = new CellPortals(tree);
+        RayHit hit = new RayHit();
+        Random rng = new Random(seed);
+        int hits = 0;
+        for (int cell = 0; cell < tree.cellCount(); cell++) {
+            ConvexPolygon shape = portals.cell(cell);
+            int samples = 0;
+            for (int i = 0; i < 40 && samples < 4 && !shape.isEmpty(); i++) {
+                double x = 0, y = 0, total = 0;
+                for (int corner = 0; corner < shape.corners(); corner++) {
+                    double weight = rng.nextDouble();
+                    x += shape.x(corner) * weight;
+                    y += shape.y(corner) * weight;
+                    total += weight;
+                }
+                x /= total;
+                y /= total;
+                if (tree.locate(x, y) != cell) {
+                    // on the edge of a sliver of a cell
+                    continue;
+                }
+                samples++;
+
+                for (int j = 0; j < 32; j++) {
+                    double angle = (j + rng.nextDouble()) * Math.PI * 2 / 32;
+                    if (tree.raycast(x, y, Math.cos(angle), Math.sin(angle), 1e9, hit)) {
+                        hits++;
+                        assertTrue(visibleSet.isVisible(cell, hit.node),
+                                "node " + hit.node + " hit from " + x + "," + y + " at " + angle + " in cell " + cell);
+                    }
+                }
+            }
+            // cells between walls along one line have no area to sample
+            assertTrue(samples > 0 || area(shape) < 1e-6, "no point found in cell " + cell);
+        }
+        assertTrue(hits > 0);
+    }
+
+    private static double area(ConvexPolygon polygon) {
+        double area = 0;
+        for (int i = 0, n = polygon.corners(); i < n; i++) {
+            int j = (i + 1) % n;
+            area += polygon.x(i) * polygon.y(j) - polygon.x(j) * polygon.y(i);
+        }
+        return Math.abs(area) / 2;
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
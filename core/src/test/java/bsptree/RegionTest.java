@@ -0,0 +1,78 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.BiPredicate;
+
+import org.junit.jupiter.api.Test;
+
+
+class RegionTest {
+
+    // a square, a triangle over one of its corners, and an L shape through both
+    private static final double[] SQUARE = { 0, 0, 10, 0, 10, 10, 0, 10 };
+    private static final double[] TRIANGLE = { 5, 5, 16, 7, 8, 15 };
+    private static final double[] ELL = { -2, 3, 14, 3, 14, 6, 2, 6, 2, 14, -2, 14 };
+
+    @Test
+    void singleRegionsContainTheirPolygons() {
+        for (double[] polygon : new double[][] { SQUARE, TRIANGLE, ELL }) {
+            Region region = new Region(Scenes.polygon(polygon));
+            assertClassifies(region, (x, y) -> inside(polygon, x, y));
+        }
+    }
+
+    @Test
+    void combinedRegionsClassifyPointsAsTheirPolygonsDo() {
+        Region square = new Region(Scenes.polygon(SQUARE));
+        Region triangle = new Region(Scenes.polygon(TRIANGLE));
+        Region ell = new Region(Scenes.polygon(ELL));
+
+        assertClassifies(square.union(triangle), (x, y) -> inside(SQUARE, x, y) || inside(TRIANGLE, x, y));
+        assertClassifies(square.intersection(triangle), (x, y) -> inside(SQUARE, x, y) && inside(TRIANGLE, x, y));
+        assertClassifies(square.difference(triangle), (x, y) -> inside(SQUARE, x, y) && !inside(TRIANGLE, x, y));
+        assertClassifies(triangle.difference(square), (x, y) -> inside(TRIANGLE, x, y) && !inside(SQUARE, x, y));
+        assertClassifies(ell.complement(), (x, y) -> !inside(ELL, x, y));
+        assertClassifies(square.union(triangle).difference(ell),
+                (x, y) -> (inside(SQUARE, x, y) || inside(TRIANGLE, x, y)) && !inside(ELL, x, y));
+        assertClassifies(ell.intersection(square.complement()).union(triangle),
+                (x, y) -> inside(ELL, x, y) && !inside(SQUARE, x, y) || inside(TRIANGLE, x, y));
+    }
+
+    @Test
+    void boundaryRebuildsTheSameRegion() {
+        Region region = new Region(Scenes.polygon(SQUARE)).union(new Region(Scenes.polygon(TRIANGLE)))
+                .difference(new Region(Scenes.polygon(ELL)));
+        Region rebuilt = new Region(region.boundary());
+        assertClassifies(rebuilt, (x, y) -> region.contains(x, y));
+    }
+
+    /**
+     * Checks a region against the expected classification on a grid of points, offset so none of them lie on an
+     * edge.
+     */
+    private static void assertClassifies(Region region, BiPredicate<Double, Double> expected) {
+        for (int i = 0; i < 80; i++) {
+            for (int j = 0; j < 80; j++) {
+                double x = -6 + i * 0.3 + 0.0123;
+                double y = -6 + j * 0.3 + 0.0171;
+                assertEquals(expected.test(x, y), region.contains(x, y), "at " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * @return true if the point is inside the polygon, by counting the edges a ray from it crosses
+     */
+    private static boolean inside(double[] polygon, double x, double y) {
+        boolean inside = false;
+        for (int i = 0; i < polygon.length; i += 2) {
+            int j = (i + 2) % polygon.length;
+            double x1 = polygon[i], y1 = polygon[i + 1], x2 = polygon[j], y2 = polygon[j + 1];
+            if ((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
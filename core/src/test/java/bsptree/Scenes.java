@@ -0,0 +1,98 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Scenes shared by the tests, each generated from the seed it is given so failures can be reproduced.
+ */
+final class Scenes {
+
+    private Scenes() {
+    }
+
+    /**
+     * Short segments of random position and direction in a square that grows with the count, so density stays
+     * constant and many of them cross.
+     */
+    static List<Line> random(int count, long seed) {
+        Random rng = new Random(seed);
+        double size = 20 * Math.sqrt(count);
+        List<Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = rng.nextDouble() * size;
+            double y = rng.nextDouble() * size;
+            lines.add(new Line("r" + i, x, y, x + rng.nextDouble() * 40 - 20, y + rng.nextDouble() * 40 - 20));
+        }
+        return lines;
+    }
+
+    /**
+     * A square grid of rooms 100 wide, with a doorway of random position in every inner wall. Every wall lies along
+     * the walls in its row or column, so the tree is full of coincident planes, and walls meet end to end.
+     * @param rooms the number of rooms along each side
+     */
+    static List<Line> rooms(int rooms, long seed) {
+        Random rng = new Random(seed);
+        double size = 100;
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i <= rooms; i++) {
+            for (int j = 0; j < rooms; j++) {
+                double y = i * size;
+                double x0 = j * size;
+                double x1 = x0 + size;
+                if (i == 0 || i == rooms) {
+                    lines.add(new Line("h", x0, y, x1, y));
+                } else {
+                    double door = x0 + 20 + rng.nextInt(50);
+                    lines.add(new Line("h", x0, y, door, y));
+                    lines.add(new Line("h", door + 10, y, x1, y));
+                }
+
+                double x = i * size;
+                double y0 = j * size;
+                double y1 = y0 + size;
+                if (i == 0 || i == rooms) {
+                    lines.add(new Line("v", x, y0, x, y1));
+                } else {
+                    double door = y0 + 20 + rng.nextInt(50);
+                    lines.add(new Line("v", x, y0, x, door));
+                    lines.add(new Line("v", x, door + 10, x, y1));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the lines around a polygon, given as corners in anticlockwise order, facing out of it
+     */
+    static List<Line> polygon(double... corners) {
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < corners.length; i += 2) {
+            int next = (i + 2) % corners.length;
+            lines.add(new Line(corners[i], corners[i + 1], corners[next], corners[next + 1]));
+        }
+        return lines;
+    }
+
+    /**
+     * Asserts two compiled trees have the same nodes in the same order.
+     */
+    static void assertSameTree(CompiledBSPTree expected, CompiledBSPTree actual) {
+        assertEquals(expected.size(), actual.size(), "size");
+        for (int i = 0; i < expected.size(); i++) {
+            String node = "node " + i;
+            assertEquals(expected.x1(i), actual.x1(i), node);
+            assertEquals(expected.y1(i), actual.y1(i), node);
+            assertEquals(expected.x2(i), actual.x2(i), node);
+            assertEquals(expected.y2(i), actual.y2(i), node);
+            assertEquals(expected.front(i), actual.front(i), node);
+            assertEquals(expected.back(i), actual.back(i), node);
+        }
+    }
+}
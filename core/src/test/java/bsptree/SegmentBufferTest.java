@@ -0,0 +1,181 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class SegmentBufferTest {
+
+    @Test
+    void loadReadsWhatWasWritten(@TempDir Path dir) throws IOException {
+        // enough segments to take several blocks to read and write
+        for (int size : new int[] { 0, 1, 2048, 5000 }) {
+            SegmentBuffer segments = randomSegments(size, 80 + size);
+            Path path = dir.resolve("segments.bin");
+            segments.write(path);
+            assertEquals(12 + size * 32L, Files.size(path));
+            assertSameSegments(segments, SegmentBuffer.load(path));
+        }
+    }
+
+    @Test
+    void loadRejectsCorruptFiles(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("segments.bin");
+        randomSegments(100, 81).write(path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        for (int length : new int[] { 0, 8, 12, bytes.length - 1 }) {
+            assertLoadFails(dir, Arrays.copyOf(bytes, length));
+        }
+        assertLoadFails(dir, Arrays.copyOf(bytes, bytes.length + 8));
+        for (int[] edit : new int[][] { { 0, 0x12345678 }, { 4, 2 }, { 8, 99 }, { 8, 101 }, { 8, -1 } }) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(edit[0], edit[1]);
+            assertLoadFails(dir, corrupt);
+        }
+    }
+
+    @Test
+    void csvValuesParseAsParseDoubleDoes(@TempDir Path dir) throws IOException {
+        List<String> values = new ArrayList<>(List.of("0", "-0", "+0", "1", "-1", "+7", "42.", ".5", "-.5", "+.25",
+                "5.", "0.1", "0.3", "-3.25", "123.456", "1e5", "1E5", "1e+5", "1.5e-3", "-2.5E-7", "7e22", "7e23",
+                "1e-22", "1e-23", "9007199254740991", "9007199254740993", "12345678901234567890",
+                "0.1234567890123456789", "3.141592653589793238", "1e308", "1e309", "-1e400", "4.9e-324", "1e-400",
+                "000123.4500", "0e999"));
+        Random rng = new Random(82);
+        for (int i = 0; i < 4000; i++) {
+            double value = (rng.nextDouble() - 0.5) * Math.pow(10, rng.nextInt(40) - 20);
+            switch (i % 4) {
+                case 0:
+                    values.add(Double.toString(value));
+                    break;
+                case 1:
+                    values.add(String.format(Locale.ROOT, "%." + rng.nextInt(20) + "f", value));
+                    break;
+                case 2:
+                    values.add(String.format(Locale.ROOT, "%." + rng.nextInt(20) + "e", value));
+                    break;
+                default:
+                    values.add(Long.toString(rng.nextLong() >> rng.nextInt(64)));
+                    break;
+            }
+        }
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            csv.append(values.get(i)).append(i % 4 == 3 ? "\n" : ",");
+        }
+        while (values.size() % 4 != 0) {
+            values.add("0");
+            csv.append(values.size() % 4 == 0 ? "0\n" : "0,");
+        }
+        SegmentBuffer segments = loadCsv(dir, csv.toString());
+
+        assertEquals(values.size() / 4, segments.size());
+        for (int i = 0; i < values.size(); i++) {
+            int segment = i / 4;
+            double actual = i % 4 == 0 ? segments.x1(segment) : i % 4 == 1 ? segments.y1(segment)
+                    : i % 4 == 2 ? segments.x2(segment) : segments.y2(segment);
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(values.get(i))), Double.doubleToLongBits(actual),
+                    values.get(i));
+        }
+    }
+
+    @Test
+    void csvSkipsBlankLinesCommentsAndSpaces(@TempDir Path dir) throws IOException {
+        SegmentBuffer segments = loadCsv(dir,
+                "# x1,y1,x2,y2\n\n  1, 2 ,3,\t4\r\n   \n5,6,7,8  \n# 9,9,9,9\n-1,-2,-3,-4");
+        assertEquals(3, segments.size());
+        assertEquals(1, segments.x1(0));
+        assertEquals(4, segments.y2(0));
+        assertEquals(5, segments.x1(1));
+        assertEquals(8, segments.y2(1));
+        assertEquals(-1, segments.x1(2));
+        assertEquals(-4, segments.y2(2));
+    }
+
+    @Test
+    void csvRejectsMalformedLines(@TempDir Path dir) {
+        for (String line : new String[] { "1,2,3", "1,2,3,4,5", "1,,3,4", "a,2,3,4", "1,2,3,x", "-,2,3,4",
+                "+,2,3,4", ".,2,3,4", "1e,2,3,4", "1e+,2,3,4", "1.2.3,2,3,4", "1 2,3,4,5", "1;2;3;4", "1,2,3,4x" }) {
+            assertThrows(IOException.class, () -> loadCsv(dir, "0,0,1,1\n" + line + "\n"), line);
+        }
+    }
+
+    @Test
+    void csvAndBinaryFilesGiveTheSameCoordinates(@TempDir Path dir) throws IOException {
+        // more than one block of text, so lines are split between reads
+        SegmentBuffer segments = randomSegments(3000, 83);
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            csv.append(segments.x1(i)).append(',').append(segments.y1(i)).append(',')
+                    .append(segments.x2(i)).append(',').append(segments.y2(i)).append('\n');
+        }
+        SegmentBuffer fromCsv = loadCsv(dir, csv.toString());
+        assertSameSegments(segments, fromCsv);
+
+        Path path = dir.resolve("segments.bin");
+        fromCsv.write(path);
+        assertSameSegments(segments, SegmentBuffer.load(path));
+    }
+
+    @Test
+    void constructorRejectsANegativeCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SegmentBuffer(-1));
+    }
+
+    /**
+     * @return segments with coordinates of many magnitudes, some of them whole numbers
+     */
+    private static SegmentBuffer randomSegments(int size, long seed) {
+        Random rng = new Random(seed);
+        SegmentBuffer segments = new SegmentBuffer(1);
+        for (int i = 0; i < size; i++) {
+            double scale = Math.pow(10, rng.nextInt(12) - 4);
+            double[] values = new double[4];
+            for (int j = 0; j < 4; j++) {
+                values[j] = i % 5 == 0 ? rng.nextInt(2000) - 1000 : (rng.nextDouble() - 0.5) * scale;
+            }
+            segments.add(values[0], values[1], values[2], values[3]);
+        }
+        return segments;
+    }
+
+    private static SegmentBuffer loadCsv(Path dir, String text) throws IOException {
+        Path path = Files.createTempFile(dir, "segments", ".csv");
+        Files.write(path, text.getBytes(StandardCharsets.US_ASCII));
+        return SegmentBuffer.loadCsv(path);
+    }
+
+    private static void assertLoadFails(Path dir, byte[] bytes) throws IOException {
+        Path path = Files.createTempFile(dir, "corrupt", ".bin");
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> SegmentBuffer.load(path), bytes.length + " bytes");
+    }
+
+    private static void assertSameSegments(SegmentBuffer expected, SegmentBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String segment = "segment " + i;
+            assertEquals(expected.x1(i), actual.x1(i), segment);
+            assertEquals(expected.y1(i), actual.y1(i), segment);
+            assertEquals(expected.x2(i), actual.x2(i), segment);
+            assertEquals(expected.y2(i), actual.y2(i), segment);
+        }
+    }
+}
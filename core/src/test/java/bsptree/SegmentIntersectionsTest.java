@@ -0,0 +1,75 @@
+package bsptree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+
+class SegmentIntersectionsTest {
+
+    @Test
+    void randomSegmentsMatchEveryPair() {
+        for (long seed = 1; seed <= 5; seed++) {
+            assertMatchesEveryPair(Scenes.random(400, seed));
+        }
+    }
+
+    @Test
+    void wallsMeetingEndToEndMatchEveryPair() {
+        // every corner of a room is touched by the ends of up to four walls, half of them collinear
+        assertMatchesEveryPair(Scenes.rooms(6, 1));
+    }
+
+    @Test
+    void splitSegmentsOnlyMeetAtTheirEnds() {
+        List<Line> pieces = SegmentIntersections.splitLines(Scenes.random(300, 7));
+        SegmentIntersections intersections = new SegmentIntersections(buffer(pieces));
+        for (int i = 0; i < intersections.size(); i++) {
+            assertFalse(intersections.crosses(i), "pieces " + intersections.first(i) + " and "
+                    + intersections.second(i) + " still cross");
+        }
+    }
+
+    private static void assertMatchesEveryPair(List<Line> lines) {
+        SegmentIntersections intersections = new SegmentIntersections(buffer(lines));
+        Set<String> swept = new TreeSet<>();
+        for (int i = 0; i < intersections.size(); i++) {
+            int first = intersections.first(i);
+            int second = intersections.second(i);
+            assertTrue(first < second);
+            assertTrue(swept.add(first + "," + second), "pair " + first + "," + second + " reported twice");
+
+            Line line = lines.get(first);
+            double t = intersections.firstT(i);
+            assertEquals(line.x1 + (line.x2 - line.x1) * t, intersections.x(i), 1e-6);
+            assertEquals(line.y1 + (line.y2 - line.y1) * t, intersections.y(i), 1e-6);
+        }
+
+        Set<String> paired = new TreeSet<>();
+        double[] parameters = new double[2];
+        for (int i = 0; i < lines.size(); i++) {
+            Line p = lines.get(i);
+            for (int j = i + 1; j < lines.size(); j++) {
+                Line q = lines.get(j);
+                if (Intersect.linesIntersect(p.x1, p.y1, p.x2, p.y2, q.x1, q.y1, q.x2, q.y2, parameters)) {
+                    paired.add(i + "," + j);
+                }
+            }
+        }
+        assertEquals(paired, swept);
+    }
+
+    private static SegmentBuffer buffer(List<Line> lines) {
+        SegmentBuffer segments = new SegmentBuffer(lines.size());
+        for (Line line : lines) {
+            segments.add(line.x1, line.y1, line.x2, line.y2);
+        }
+        return segments;
+    }
+}